@@ -0,0 +1,51 @@
+#!/usr/bin/env bash
+# Builds Dockerfile.java at a baseline revision and from the working tree, then reports for each
+# image the median time from `docker run` to the first successful GET /api/posts, the resident
+# memory of the JVM at that point, and the image size.
+#
+#   java/socialapp/scripts/measure-startup.sh [baseline-ref] [runs]
+#
+# The baseline defaults to the revision before Dockerfile.java last changed.
+set -euo pipefail
+
+root=$(git rev-parse --show-toplevel)
+baseline=${1:-$(git -C "$root" log -1 --format=%H -- Dockerfile.java)~1}
+runs=${2:-5}
+
+worktree=$(mktemp -d)
+trap 'git -C "$root" worktree remove --force "$worktree"' EXIT
+git -C "$root" worktree add --detach "$worktree" "$baseline" >/dev/null
+
+echo "Building baseline ($baseline) and working tree images..." >&2
+docker build -q -f "$worktree/Dockerfile.java" -t socialapp-startup:baseline "$worktree" >/dev/null
+docker build -q -f "$root/Dockerfile.java" -t socialapp-startup:current "$root" >/dev/null
+
+# Prints "<milliseconds to first response> <RSS in MiB>" for one fresh container.
+measure() {
+    local image=$1 start container port elapsed rss
+    start=$(date +%s%N)
+    container=$(docker run -d -p 127.0.0.1::8080 "$image")
+    port=$(docker port "$container" 8080/tcp | head -n 1 | cut -d: -f2)
+    until curl -sf -o /dev/null "http://127.0.0.1:$port/api/posts"; do
+        sleep 0.02
+    done
+    elapsed=$(( ($(date +%s%N) - start) / 1000000 ))
+    rss=$(docker exec "$container" awk '/^VmRSS:/ { print $2 }' /proc/1/status)
+    docker rm -f "$container" >/dev/null
+    echo "$elapsed $(( rss / 1024 ))"
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { print values[int((NR + 1) / 2)] }'
+}
+
+printf '%-10s %20s %10s %10s\n' image first-request-ms rss-mib size-mb
+for tag in baseline current; do
+    image=socialapp-startup:$tag
+    samples=$(for _ in $(seq "$runs"); do measure "$image"; done)
+    size=$(docker image inspect --format '{{.Size}}' "$image")
+    printf '%-10s %20s %10s %10s\n' "$tag" \
+        "$(cut -d' ' -f1 <<<"$samples" | median)" \
+        "$(cut -d' ' -f2 <<<"$samples" | median)" \
+        "$(( size / 1000000 ))"
+done
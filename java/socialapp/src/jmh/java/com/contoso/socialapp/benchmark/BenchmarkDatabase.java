@@ -0,0 +1,176 @@
+package com.contoso.socialapp.benchmark;
+
+import com.contoso.socialapp.config.DatabaseInitializer;
+import com.contoso.socialapp.repository.DatabaseLatency;
+import com.contoso.socialapp.repository.JdbcConcurrencyLimiter;
+import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.repository.WriteQueue;
+import com.contoso.socialapp.service.ActivityEvents;
+import com.contoso.socialapp.service.ChangeVersions;
+import com.contoso.socialapp.service.LikeWriteBuffer;
+import com.contoso.socialapp.service.PostCache;
+import com.contoso.socialapp.service.SocialAppService;
+import com.contoso.socialapp.service.TrendingIndex;
+import com.contoso.socialapp.service.UuidV7;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+final class BenchmarkDatabase implements AutoCloseable {
+    private static final Instant EPOCH = Instant.parse("2025-01-01T00:00:00Z");
+    private static final int SEED_CHUNK = 10_000;
+
+    private final Path file;
+    private final SingleConnectionDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceTransactionManager transactionManager;
+    private final List<UUID> postIds = new ArrayList<>();
+    private WriteQueue writeQueue;
+
+    private BenchmarkDatabase(Path file) {
+        this.file = file;
+        this.dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + file, true);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
+        new DatabaseInitializer(jdbcTemplate, transactionManager).initialize();
+    }
+
+    static BenchmarkDatabase seeded(int posts) {
+        return seeded(posts, i -> "Post content " + i);
+    }
+
+    static BenchmarkDatabase seeded(int posts, IntFunction<String> content) {
+        try {
+            BenchmarkDatabase database = new BenchmarkDatabase(Files.createTempFile("socialapp-bench", ".db"));
+            database.seed(posts, content);
+            return database;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    SocialAppRepository repository() {
+        DatabaseLatency latency = new DatabaseLatency();
+        if (writeQueue == null) {
+            writeQueue = new WriteQueue(
+                    jdbcTemplate, transactionManager, new SimpleMeterRegistry(), latency, 1024, 64, Duration.ofSeconds(30)
+            );
+        }
+        JdbcConcurrencyLimiter reads = new JdbcConcurrencyLimiter(new SimpleMeterRegistry(), latency, 4, Duration.ofSeconds(5));
+        return new SocialAppRepository(writeQueue, reads, jdbcTemplate, new SimpleMeterRegistry());
+    }
+
+    SocialAppService service() {
+        SocialAppRepository repository = repository();
+        PostCache cache = new PostCache(
+                repository, new SimpleMeterRegistry(), DataSize.ofMegabytes(8), DataSize.ofMegabytes(32), Duration.ofSeconds(30)
+        );
+        ChangeVersions versions = new ChangeVersions(4096);
+        TrendingIndex trending = new TrendingIndex(repository, versions, Duration.ofHours(6), new SimpleMeterRegistry());
+        trending.rebuild();
+        ActivityEvents events = new ActivityEvents(new ObjectMapper(), 1024);
+        LikeWriteBuffer likeBuffer = new LikeWriteBuffer(
+                repository, cache, trending, events, false, Duration.ofMillis(100), Duration.ofSeconds(1), 16
+        );
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        return new SocialAppService(repository, cache, likeBuffer, versions, trending, events, validator);
+    }
+
+    List<UUID> postIds() {
+        return postIds;
+    }
+
+    /**
+     * Inserts in chunks of {@value #SEED_CHUNK} posts, one transaction each, so large databases
+     * don't have to be held in memory before they are written.
+     */
+    private void seed(int posts, IntFunction<String> content) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int from = 0; from < posts; from += SEED_CHUNK) {
+            int to = Math.min(posts, from + SEED_CHUNK);
+            List<Object[]> postRows = new ArrayList<>(to - from);
+            List<Object[]> likeRows = new ArrayList<>();
+            List<Object[]> commentRows = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Instant createdAt = EPOCH.plusSeconds(i);
+                UUID postId = UuidV7.at(createdAt);
+                byte[] postKey = bytes(postId);
+                postIds.add(postId);
+                postRows.add(new Object[]{
+                        postKey, "user" + (i % 100), content.apply(i), createdAt.toEpochMilli(), createdAt.toEpochMilli()
+                });
+                for (int like = 0; like < i % 5; like++) {
+                    likeRows.add(new Object[]{postKey, "fan" + like});
+                }
+                for (int comment = 0; comment < i % 3; comment++) {
+                    commentRows.add(new Object[]{
+                            bytes(UuidV7.at(createdAt)), postKey, "user" + comment, "Comment " + comment,
+                            createdAt.toEpochMilli(), createdAt.toEpochMilli()
+                    });
+                }
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO posts (id, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?)",
+                        postRows
+                );
+                jdbcTemplate.batchUpdate("INSERT INTO likes (postId, username) VALUES (?, ?)", likeRows);
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO comments (id, postId, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?, ?)",
+                        commentRows
+                );
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        if (writeQueue != null) {
+            try {
+                writeQueue.shutdown();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        dataSource.destroy();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static UUID uuid(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+}
@@ -0,0 +1,74 @@
+package com.contoso.socialapp.benchmark;
+
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.repository.SocialAppRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeedQueryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Feed {
+        @Param({"100", "1000", "10000", "100000"})
+        public int posts;
+
+        BenchmarkDatabase database;
+        SocialAppRepository repository;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = BenchmarkDatabase.seeded(posts);
+            repository = database.repository();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    @Benchmark
+    public List<Post> aggregatedQuery(Feed feed) {
+        return feed.repository.findAllPosts();
+    }
+
+    @Benchmark
+    public List<Post> perRowCounts(Feed feed) {
+        JdbcTemplate jdbcTemplate = feed.database.jdbcTemplate();
+        return jdbcTemplate.query(
+                "SELECT id, username, content, createdAt, updatedAt FROM posts ORDER BY createdAt DESC",
+                (rs, rowNum) -> new Post(
+                        BenchmarkDatabase.uuid(rs.getBytes("id")),
+                        rs.getString("username"),
+                        rs.getString("content"),
+                        Instant.ofEpochMilli(rs.getLong("createdAt")),
+                        Instant.ofEpochMilli(rs.getLong("updatedAt")),
+                        0,
+                        0
+                )
+        ).stream().map(post -> new Post(
+                post.id(),
+                post.username(),
+                post.content(),
+                post.createdAt(),
+                post.updatedAt(),
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM likes WHERE postId=?", Integer.class, BenchmarkDatabase.bytes(post.id())),
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM comments WHERE postId=?", Integer.class, BenchmarkDatabase.bytes(post.id()))
+        )).toList();
+    }
+}
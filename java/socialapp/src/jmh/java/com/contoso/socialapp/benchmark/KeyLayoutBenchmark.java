@@ -0,0 +1,144 @@
+package com.contoso.socialapp.benchmark;
+
+import com.contoso.socialapp.service.UuidV7;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts posts with a comment and a like each under the old key layout (random UUID strings)
+ * and the current one (UUIDv7 blobs), on top of an already populated database. The file size
+ * each layout ends up with, per post, is printed when the trial ends.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KeyLayoutBenchmark {
+    private static final int BATCH = 100;
+
+    public enum Layout {
+        TEXT_UUID_V4("TEXT", ""),
+        BLOB_UUID_V7("BLOB", " WITHOUT ROWID");
+
+        private final String keyType;
+        private final String likesOptions;
+
+        Layout(String keyType, String likesOptions) {
+            this.keyType = keyType;
+            this.likesOptions = likesOptions;
+        }
+
+        Object newId(Instant now) {
+            return this == TEXT_UUID_V4 ? UUID.randomUUID().toString() : BenchmarkDatabase.bytes(UuidV7.at(now));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        @Param({"TEXT_UUID_V4", "BLOB_UUID_V7"})
+        public Layout layout;
+
+        @Param({"100000"})
+        public int existingPosts;
+
+        Path file;
+        SingleConnectionDataSource dataSource;
+        JdbcTemplate jdbcTemplate;
+        TransactionTemplate transactionTemplate;
+        long clock = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("socialapp-keys", ".db");
+            dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + file, true);
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+            jdbcTemplate.execute("PRAGMA journal_mode = WAL");
+            jdbcTemplate.execute("PRAGMA foreign_keys = ON");
+            String key = layout.keyType;
+            jdbcTemplate.execute("CREATE TABLE posts (id " + key + " NOT NULL PRIMARY KEY, username TEXT NOT NULL, " +
+                    "content TEXT NOT NULL, createdAt INTEGER NOT NULL, updatedAt INTEGER NOT NULL, " +
+                    "likeCount INTEGER NOT NULL DEFAULT 0, commentCount INTEGER NOT NULL DEFAULT 0)");
+            jdbcTemplate.execute("CREATE TABLE comments (id " + key + " NOT NULL PRIMARY KEY, postId " + key + " NOT NULL, " +
+                    "username TEXT NOT NULL, content TEXT NOT NULL, createdAt INTEGER NOT NULL, updatedAt INTEGER NOT NULL, " +
+                    "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE)");
+            jdbcTemplate.execute("CREATE TABLE likes (postId " + key + " NOT NULL, username TEXT NOT NULL, " +
+                    "PRIMARY KEY (postId, username), FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE)" +
+                    layout.likesOptions);
+            jdbcTemplate.execute("CREATE INDEX idx_posts_createdAt_id ON posts (createdAt, id)");
+            jdbcTemplate.execute("CREATE INDEX idx_comments_postId_createdAt_id ON comments (postId, createdAt, id)");
+            jdbcTemplate.execute("CREATE INDEX idx_likes_username ON likes (username)");
+            for (int inserted = 0; inserted < existingPosts; inserted += BATCH) {
+                insertBatch();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            jdbcTemplate.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            long posts = count("SELECT COUNT(*) FROM posts");
+            long bytes = count("PRAGMA page_count") * count("PRAGMA page_size");
+            System.out.printf("%n%s: %d posts in %.1f MiB, %d bytes per post%n",
+                    layout, posts, bytes / (1024.0 * 1024.0), bytes / posts);
+            dataSource.destroy();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Path.of(file + "-wal"));
+            Files.deleteIfExists(Path.of(file + "-shm"));
+        }
+
+        int insertBatch() {
+            List<Object[]> posts = new ArrayList<>(BATCH);
+            List<Object[]> comments = new ArrayList<>(BATCH);
+            List<Object[]> likes = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                long createdAt = clock++;
+                Instant now = Instant.ofEpochMilli(createdAt);
+                Object postId = layout.newId(now);
+                posts.add(new Object[]{postId, "user" + (createdAt % 100), "Post content " + createdAt, createdAt, createdAt});
+                comments.add(new Object[]{layout.newId(now), postId, "user" + (createdAt % 7), "Comment", createdAt, createdAt});
+                likes.add(new Object[]{postId, "fan" + (createdAt % 13)});
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO posts (id, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?)", posts);
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO comments (id, postId, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?, ?)",
+                        comments);
+                jdbcTemplate.batchUpdate("INSERT INTO likes (postId, username) VALUES (?, ?)", likes);
+            });
+            return BATCH;
+        }
+
+        private long count(String sql) {
+            Long count = jdbcTemplate.queryForObject(sql, Long.class);
+            return count == null ? 0 : count;
+        }
+    }
+
+    /**
+     * One operation is a transaction of {@value #BATCH} posts, comments and likes.
+     */
+    @Benchmark
+    public int insertPosts(Database database) {
+        return database.insertBatch();
+    }
+}
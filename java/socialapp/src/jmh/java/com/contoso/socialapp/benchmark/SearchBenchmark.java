@@ -0,0 +1,91 @@
+package com.contoso.socialapp.benchmark;
+
+import com.contoso.socialapp.model.Page;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.service.SocialAppService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.SplittableRandom;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First-page search latency through the service. Post content is drawn from a skewed vocabulary
+ * of {@value #VOCABULARY} words, so {@code term0} appears in most posts, {@code term100} in about
+ * one in a hundred and {@code term5000} in about one in two thousand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark {
+    private static final int VOCABULARY = 10_000;
+    private static final int PAGE_SIZE = 20;
+
+    @State(Scope.Benchmark)
+    public static class Index {
+        @Param({"1000000"})
+        public int posts;
+
+        BenchmarkDatabase database;
+        SocialAppService service;
+        String secondPageCursor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = BenchmarkDatabase.seeded(posts, SearchBenchmark::content);
+            service = database.service();
+            secondPageCursor = service.searchPosts("term100", PAGE_SIZE, null).nextCursor();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    @Benchmark
+    public Page<Post> commonWord(Index index) {
+        return index.service.searchPosts("term0", PAGE_SIZE, null);
+    }
+
+    @Benchmark
+    public Page<Post> uncommonWord(Index index) {
+        return index.service.searchPosts("term100", PAGE_SIZE, null);
+    }
+
+    @Benchmark
+    public Page<Post> uncommonWordSecondPage(Index index) {
+        return index.service.searchPosts("term100", PAGE_SIZE, index.secondPageCursor);
+    }
+
+    @Benchmark
+    public Page<Post> rareWord(Index index) {
+        return index.service.searchPosts("term5000", PAGE_SIZE, null);
+    }
+
+    @Benchmark
+    public Page<Post> twoWords(Index index) {
+        return index.service.searchPosts("term0 term100", PAGE_SIZE, null);
+    }
+
+    /**
+     * Eight to nineteen words per post, seeded by the post's index so every run indexes the same text.
+     */
+    private static String content(int post) {
+        SplittableRandom random = new SplittableRandom(post);
+        int words = 8 + random.nextInt(12);
+        StringJoiner text = new StringJoiner(" ");
+        for (int i = 0; i < words; i++) {
+            text.add("term" + (int) (VOCABULARY * Math.pow(random.nextDouble(), 4)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.contoso.socialapp.benchmark;
+
+import com.contoso.socialapp.model.Comment;
+import com.contoso.socialapp.model.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private static final Instant EPOCH = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Param({"1", "20", "1000"})
+    public int items;
+
+    ObjectWriter postsWriter;
+    ObjectWriter commentsWriter;
+    List<Post> posts;
+    List<Comment> comments;
+
+    @Setup
+    public void setUp() {
+        JsonMapper mapper = JsonMapper.builder().build();
+        postsWriter = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Post.class));
+        commentsWriter = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Comment.class));
+        posts = new ArrayList<>(items);
+        comments = new ArrayList<>(items);
+        UUID postId = UUID.randomUUID();
+        for (int i = 0; i < items; i++) {
+            Instant createdAt = EPOCH.plusSeconds(i);
+            posts.add(new Post(UUID.randomUUID(), "user" + (i % 100), "Post content " + i, createdAt, createdAt, i % 5, i % 3));
+            comments.add(new Comment(UUID.randomUUID(), postId, "user" + (i % 100), "Comment " + i, createdAt, createdAt));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializePosts() {
+        return postsWriter.writeValueAsBytes(posts);
+    }
+
+    @Benchmark
+    public byte[] serializeComments() {
+        return commentsWriter.writeValueAsBytes(comments);
+    }
+}
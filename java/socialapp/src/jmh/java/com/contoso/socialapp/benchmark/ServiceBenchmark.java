@@ -0,0 +1,94 @@
+package com.contoso.socialapp.benchmark;
+
+import com.contoso.socialapp.model.Comment;
+import com.contoso.socialapp.model.CommentCreateRequest;
+import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Page;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.service.SocialAppService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"1000", "10000", "100000"})
+        public int posts;
+
+        BenchmarkDatabase database;
+        SocialAppRepository repository;
+        SocialAppService service;
+        long nextLiker;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = BenchmarkDatabase.seeded(posts);
+            repository = database.repository();
+            service = database.service();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.close();
+        }
+
+        UUID randomPostId() {
+            List<UUID> postIds = database.postIds();
+            return postIds.get(ThreadLocalRandom.current().nextInt(postIds.size()));
+        }
+    }
+
+    @Benchmark
+    public Page<Post> listPostsPage(Dataset dataset) {
+        return dataset.service.listPosts(20, null, null);
+    }
+
+    /**
+     * The same page with {@code likedByViewer} filled in; seeded posts are liked by fan0 to fan3.
+     */
+    @Benchmark
+    public Page<Post> listPostsPageWithViewer(Dataset dataset) {
+        return dataset.service.listPosts(20, null, "fan1");
+    }
+
+    @Benchmark
+    public Post getPostCached(Dataset dataset) {
+        return dataset.service.getPost(dataset.randomPostId());
+    }
+
+    @Benchmark
+    public Optional<Post> getPostUncached(Dataset dataset) {
+        return dataset.repository.findPostById(dataset.randomPostId());
+    }
+
+    @Benchmark
+    public Comment createComment(Dataset dataset) {
+        return dataset.service.createComment(
+                dataset.randomPostId(),
+                new CommentCreateRequest("bench", "Benchmark comment")
+        );
+    }
+
+    @Benchmark
+    public void likePost(Dataset dataset) {
+        dataset.service.likePost(dataset.randomPostId(), new LikeRequest("liker" + dataset.nextLiker++));
+    }
+}
@@ -0,0 +1,158 @@
+package com.contoso.socialapp.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives the packaged application over HTTP with more concurrent clients than the
+ * Tomcat worker pool has threads, once per request execution model. The server runs
+ * in its own JVM so client threads don't compete with it for the JIT or the heap.
+ * Admission control is off, since a fast 503 would otherwise count as a request served,
+ * and any response other than 200 fails the run.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(400)
+public class ThreadModelBenchmark {
+    private static final int SEEDED_POSTS = 1_000;
+    private static final Pattern POST_ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"false", "true"})
+        public boolean virtualThreads;
+
+        Process process;
+        Path database;
+        String baseUrl;
+        HttpClient client;
+        List<String> postIds;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            String jar = System.getProperty("socialapp.benchmark.jar");
+            if (jar == null) {
+                throw new IllegalStateException("socialapp.benchmark.jar is not set; run through the jmh Gradle task");
+            }
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            database = Files.createTempFile("socialapp-bench", ".db");
+            baseUrl = "http://localhost:" + port + "/api";
+            process = new ProcessBuilder(
+                    ProcessHandle.current().info().command().orElse("java"),
+                    "-jar", jar,
+                    "--server.port=" + port,
+                    "--spring.datasource.url=jdbc:sqlite:" + database,
+                    "--spring.threads.virtual.enabled=" + virtualThreads,
+                    "--socialapp.admission.enabled=false",
+                    "--logging.level.root=WARN"
+            ).inheritIO().start();
+            client = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            awaitStartup();
+            postIds = seed();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            for (String suffix : new String[]{"", "-wal", "-shm"}) {
+                Files.deleteIfExists(Path.of(database + suffix));
+            }
+        }
+
+        String randomPostId() {
+            return postIds.get(ThreadLocalRandom.current().nextInt(postIds.size()));
+        }
+
+        int get(String path) throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        }
+
+        int getOk(String path) throws IOException, InterruptedException {
+            int status = get(path);
+            if (status != 200) {
+                throw new IllegalStateException("GET " + path + " answered " + status);
+            }
+            return status;
+        }
+
+        private void awaitStartup() throws InterruptedException, IOException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with " + process.exitValue());
+                }
+                try {
+                    if (get("/posts?limit=1") == 200) {
+                        return;
+                    }
+                } catch (ConnectException ex) {
+                    // not listening yet
+                }
+                Thread.sleep(200);
+            }
+            throw new IllegalStateException("Application did not start within 60 seconds");
+        }
+
+        private List<String> seed() throws IOException, InterruptedException {
+            List<String> ids = new ArrayList<>(SEEDED_POSTS);
+            for (int i = 0; i < SEEDED_POSTS; i++) {
+                String body = "{\"username\":\"user" + (i % 100) + "\",\"content\":\"Post content " + i + "\"}";
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/posts"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+                Matcher id = POST_ID.matcher(client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                if (!id.find()) {
+                    throw new IllegalStateException("Could not seed posts");
+                }
+                ids.add(id.group(1));
+            }
+            return ids;
+        }
+    }
+
+    @Benchmark
+    public int feedPage(Server server) throws IOException, InterruptedException {
+        return server.getOk("/posts?limit=20");
+    }
+
+    @Benchmark
+    public int postDetail(Server server) throws IOException, InterruptedException {
+        return server.getOk("/posts/" + server.randomPostId());
+    }
+}
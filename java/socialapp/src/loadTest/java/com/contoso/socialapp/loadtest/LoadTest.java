@@ -0,0 +1,350 @@
+package com.contoso.socialapp.loadtest;
+
+import com.contoso.socialapp.DemoApplication;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Starts the application on a random port against a throwaway SQLite file, then drives a
+ * weighted mix of API calls from one virtual thread per simulated client. It prints
+ * throughput and p50/p99/p99.9 per operation and exits non-zero when any operation failed
+ * or its p99 exceeds the stored baseline by more than the tolerance.
+ *
+ * <p>Settings are {@code loadtest.*} system properties; the Gradle {@code loadTest} task
+ * forwards {@code -Ploadtest.*} project properties.
+ */
+public final class LoadTest {
+    private static final Pattern POST_ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+
+    private final Settings settings;
+    private final String baseUrl;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final AtomicLong likers = new AtomicLong();
+    private final List<String> postIds = new ArrayList<>();
+
+    private LoadTest(Settings settings, String baseUrl) {
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.fromSystemProperties();
+        Path database = Files.createTempFile("socialapp-loadtest", ".db");
+        boolean passed;
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(DemoApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:sqlite:" + database,
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN"
+                )
+                .run()) {
+            int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            LoadTest test = new LoadTest(settings, "http://localhost:" + port + "/api");
+            test.seed();
+            test.run(settings.warmup());
+            Map<Operation, Result> results = test.run(settings.duration());
+            passed = test.report(results);
+        } finally {
+            for (String suffix : new String[]{"", "-wal", "-shm"}) {
+                Files.deleteIfExists(Path.of(database + suffix));
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private void seed() throws Exception {
+        List<Future<String>> seeded = new ArrayList<>(settings.seedPosts());
+        Semaphore inFlight = new Semaphore(settings.concurrency());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.seedPosts(); i++) {
+                String body = "{\"username\":\"user" + (i % 100) + "\",\"content\":\"Load test post " + i + "\"}";
+                inFlight.acquire();
+                seeded.add(executor.submit(() -> {
+                    try {
+                        HttpResponse<String> response = client.send(post("/posts", body), HttpResponse.BodyHandlers.ofString());
+                        while (response.statusCode() == 503) {
+                            Thread.sleep(TimeUnit.SECONDS.toMillis(response.headers().firstValueAsLong("Retry-After").orElse(1)));
+                            response = client.send(post("/posts", body), HttpResponse.BodyHandlers.ofString());
+                        }
+                        Matcher id = POST_ID.matcher(response.body());
+                        if (response.statusCode() != 201 || !id.find()) {
+                            throw new IllegalStateException("Seeding failed with HTTP " + response.statusCode());
+                        }
+                        return id.group(1);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+        }
+        for (Future<String> postId : seeded) {
+            postIds.add(postId.get());
+        }
+    }
+
+    private Map<Operation, Result> run(Duration duration) throws InterruptedException {
+        Map<Operation, Result> results = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            results.put(operation, new Result());
+        }
+        long started = System.nanoTime();
+        long deadline = started + duration.toNanos();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.concurrency(); i++) {
+                clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        Operation operation = settings.pick(ThreadLocalRandom.current().nextInt(settings.totalWeight()));
+                        execute(operation, results);
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        results.values().forEach(result -> result.elapsedNanos = elapsed);
+        return results;
+    }
+
+    private void execute(Operation operation, Map<Operation, Result> results) {
+        String postId = postIds.get(ThreadLocalRandom.current().nextInt(postIds.size()));
+        switch (operation) {
+            case FEED -> call(results.get(Operation.FEED), get("/posts?limit=20"), 200);
+            case POST_DETAIL -> call(results.get(Operation.POST_DETAIL), get("/posts/" + postId), 200);
+            case COMMENT -> call(results.get(Operation.COMMENT),
+                    post("/posts/" + postId + "/comments", "{\"username\":\"loadtest\",\"content\":\"Load test comment\"}"), 201);
+            case LIKE, UNLIKE -> {
+                String body = "{\"username\":\"liker" + likers.incrementAndGet() + "\"}";
+                if (call(results.get(Operation.LIKE), post("/posts/" + postId + "/likes", body), 201)) {
+                    HttpRequest unlike = HttpRequest.newBuilder(URI.create(baseUrl + "/posts/" + postId + "/likes"))
+                            .header("Content-Type", "application/json")
+                            .method("DELETE", HttpRequest.BodyPublishers.ofString(body))
+                            .build();
+                    call(results.get(Operation.UNLIKE), unlike, 204);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shed requests (503 or 429) are counted apart from errors and left out of the latencies, and
+     * the client waits out their Retry-After as a well-behaved caller would.
+     */
+    private boolean call(Result result, HttpRequest request, int expectedStatus) {
+        long started = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            int status = response.statusCode();
+            if (status == 503 || status == 429) {
+                result.shed.increment();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(response.headers().firstValueAsLong("Retry-After").orElse(1)));
+                return false;
+            }
+            result.latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+            if (status == expectedStatus) {
+                return true;
+            }
+        } catch (IOException | InterruptedException ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        result.errors.increment();
+        return false;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private boolean report(Map<Operation, Result> results) throws IOException {
+        Properties current = new Properties();
+        Properties baseline = load(settings.baseline());
+        boolean passed = true;
+        System.out.printf("%n%-12s %10s %10s %10s %10s %10s %8s %8s%n",
+                "operation", "count", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "errors", "shed");
+        for (Map.Entry<Operation, Result> entry : results.entrySet()) {
+            String name = entry.getKey().key();
+            Result result = entry.getValue();
+            Histogram latency = result.latencyMicros;
+            if (latency.getTotalCount() == 0) {
+                continue;
+            }
+            double p50 = latency.getValueAtPercentile(50) / 1000.0;
+            double p99 = latency.getValueAtPercentile(99) / 1000.0;
+            double p999 = latency.getValueAtPercentile(99.9) / 1000.0;
+            double throughput = latency.getTotalCount() / (result.elapsedNanos / 1e9);
+            long errors = result.errors.sum();
+            long shed = result.shed.sum();
+            System.out.printf(Locale.ROOT, "%-12s %10d %10.1f %10.2f %10.2f %10.2f %8d %8d%n",
+                    name, latency.getTotalCount(), throughput, p50, p99, p999, errors, shed);
+            current.setProperty(name + ".throughput", format(throughput));
+            current.setProperty(name + ".p50", format(p50));
+            current.setProperty(name + ".p99", format(p99));
+            current.setProperty(name + ".p999", format(p999));
+            current.setProperty(name + ".errors", String.valueOf(errors));
+            current.setProperty(name + ".shed", String.valueOf(shed));
+
+            if (errors > 0) {
+                System.out.printf("FAIL %s: %d requests failed%n", name, errors);
+                passed = false;
+            }
+            String allowed = baseline.getProperty(name + ".p99");
+            if (allowed != null && p99 > Double.parseDouble(allowed) * (1 + settings.tolerance())) {
+                System.out.printf(Locale.ROOT, "FAIL %s: p99 %.2f ms is more than %.0f%% over the baseline %s ms%n",
+                        name, p99, settings.tolerance() * 100, allowed);
+                passed = false;
+            }
+        }
+        store(current, settings.report());
+        if (settings.updateBaseline()) {
+            store(current, settings.baseline());
+            System.out.println("Baseline updated: " + settings.baseline());
+            return true;
+        }
+        return passed;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static Properties load(Path path) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            properties.store(writer, "socialapp load test, latencies in milliseconds");
+        }
+    }
+
+    private enum Operation {
+        FEED("feed"),
+        POST_DETAIL("detail"),
+        COMMENT("comment"),
+        LIKE("like"),
+        UNLIKE("unlike");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        String key() {
+            return key;
+        }
+
+        static Operation fromKey(String key) {
+            for (Operation operation : values()) {
+                if (operation.key.equals(key)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation in loadtest.mix: " + key);
+        }
+    }
+
+    private static final class Result {
+        private final Histogram latencyMicros = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private long elapsedNanos;
+    }
+
+    private record Settings(
+            Duration duration,
+            Duration warmup,
+            int concurrency,
+            int seedPosts,
+            double tolerance,
+            Operation[] weighted,
+            Path baseline,
+            Path report,
+            boolean updateBaseline
+    ) {
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    Duration.parse(System.getProperty("loadtest.duration", "PT30S")),
+                    Duration.parse(System.getProperty("loadtest.warmup", "PT10S")),
+                    Integer.getInteger("loadtest.concurrency", 200),
+                    Integer.getInteger("loadtest.seedPosts", 1000),
+                    Double.parseDouble(System.getProperty("loadtest.tolerance", "0.25")),
+                    weights(System.getProperty("loadtest.mix", "feed=60,detail=25,comment=10,like=5")),
+                    Path.of(System.getProperty("loadtest.baseline", "src/loadTest/baseline.properties")),
+                    Path.of(System.getProperty("loadtest.report", "build/reports/loadtest/report.properties")),
+                    Boolean.getBoolean("loadtest.updateBaseline")
+            );
+        }
+
+        /**
+         * Expands {@code feed=60,detail=25} into a table with one slot per unit of weight, so
+         * picking an operation is a single random index.
+         */
+        private static Operation[] weights(String mix) {
+            List<Operation> slots = new ArrayList<>();
+            for (String entry : mix.split(",")) {
+                String[] parts = entry.trim().split("=");
+                Operation operation = Operation.fromKey(parts[0].trim());
+                for (int i = 0; i < Integer.parseInt(parts[1].trim()); i++) {
+                    slots.add(operation);
+                }
+            }
+            if (slots.isEmpty()) {
+                throw new IllegalArgumentException("loadtest.mix has no weight: " + mix);
+            }
+            return slots.toArray(Operation[]::new);
+        }
+
+        int totalWeight() {
+            return weighted.length;
+        }
+
+        Operation pick(int slot) {
+            return weighted[slot];
+        }
+    }
+}
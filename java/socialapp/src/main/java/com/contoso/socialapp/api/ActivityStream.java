@@ -0,0 +1,139 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.service.ActivityEvents;
+import com.contoso.socialapp.service.ActivityEvents.Event;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves {@link ActivityEvents} as Server-Sent Events. Each subscriber gets a virtual thread that
+ * waits for the next event and writes it, so an idle connection costs a parked virtual thread and
+ * no Tomcat thread. A subscriber that falls a whole ring behind is disconnected; when it
+ * reconnects its Last-Event-ID is too old to resume from, and it gets a {@code resync} event
+ * telling it to reload the feed before carrying on from the current event.
+ */
+@Component
+public class ActivityStream {
+    static final String RESYNC = "resync";
+    private static final long RECONNECT_MILLIS = 3000;
+
+    private final ActivityEvents events;
+    private final Duration heartbeat;
+    private final Duration timeout;
+    private final int maxSubscribers;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Map<SseEmitter, Thread> writers = new ConcurrentHashMap<>();
+    private final Counter dropped;
+
+    public ActivityStream(
+            ActivityEvents events,
+            MeterRegistry meterRegistry,
+            @Value("${socialapp.stream.heartbeat:PT15S}") Duration heartbeat,
+            @Value("${socialapp.stream.timeout:PT30M}") Duration timeout,
+            @Value("${socialapp.stream.max-subscribers:10000}") int maxSubscribers
+    ) {
+        this.events = events;
+        this.heartbeat = heartbeat;
+        this.timeout = timeout;
+        this.maxSubscribers = maxSubscribers;
+        Gauge.builder("socialapp.stream.subscribers", subscribers, AtomicInteger::get)
+                .description("Open activity stream connections")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("socialapp.stream.dropped")
+                .description("Activity stream subscribers disconnected for falling behind")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Null when the subscriber limit is reached.
+     */
+    SseEmitter subscribe(String lastEventId) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        long resumeAfter = lastEventId == null ? events.latest() : events.resumeAfter(lastEventId.trim());
+        Thread writer = Thread.ofVirtual()
+                .name("activity-stream")
+                .unstarted(() -> write(emitter, resumeAfter));
+        writers.put(emitter, writer);
+        Runnable close = () -> {
+            if (writers.remove(emitter) != null) {
+                subscribers.decrementAndGet();
+                writer.interrupt();
+            }
+        };
+        emitter.onCompletion(close);
+        emitter.onTimeout(close);
+        emitter.onError(error -> close.run());
+        writer.start();
+        return emitter;
+    }
+
+    /**
+     * Graceful shutdown waits for open requests, which these never stop being on their own, so
+     * they are completed as soon as the context starts closing rather than when this bean is
+     * destroyed.
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void closeAll() {
+        writers.keySet().forEach(SseEmitter::complete);
+    }
+
+    private void write(SseEmitter emitter, long resumeAfter) {
+        try {
+            long position = resumeAfter;
+            if (position < 0) {
+                position = events.latest();
+                emitter.send(SseEmitter.event()
+                        .id(events.id(position))
+                        .name(RESYNC)
+                        .reconnectTime(RECONNECT_MILLIS)
+                        .data("{}", MediaType.APPLICATION_JSON));
+            } else {
+                // Also flushes the response headers, so the client sees the stream open at once.
+                emitter.send(SseEmitter.event().reconnectTime(RECONNECT_MILLIS));
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                long latest = events.await(position, heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+                if (latest == position) {
+                    emitter.send(SseEmitter.event().comment(""));
+                    continue;
+                }
+                while (position < latest) {
+                    Event event = events.get(position + 1);
+                    if (event == null) {
+                        dropped.increment();
+                        emitter.complete();
+                        return;
+                    }
+                    emitter.send(SseEmitter.event()
+                            .id(event.id())
+                            .name(event.type())
+                            .data(event.data(), MediaType.APPLICATION_JSON));
+                    position = event.sequence();
+                }
+            }
+        } catch (InterruptedException | IllegalStateException ex) {
+            // The emitter completed, timed out or failed, possibly while an event was being written.
+        } catch (IOException ex) {
+            // The client went away. The container reports that to Spring MVC, which completes the
+            // emitter, so there is nothing to clean up here.
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.model.ErrorResponse;
+import com.contoso.socialapp.repository.DatabaseLatency;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns requests away before they queue for a database that is already behind. Reads and writes
+ * each get a {@link ConcurrencyLimit} that follows repository latency, and a request over its
+ * limit gets an immediate 503 instead of a Tomcat thread to wait on. When
+ * {@code socialapp.admission.user-rate} is set, each username also gets a token bucket, and
+ * requests over it get a 429. Both carry Retry-After.
+ *
+ * <p>Reads are charged to their {@code viewer} parameter, and only count against the concurrency
+ * limits without one. Every write is charged: to the body's top-level {@code username}, to the
+ * username of each item of a batch, or to the client's address when no username can be read from
+ * the body. The body is read here and replayed to the controller, so a write body over
+ * {@code socialapp.admission.max-body-size} is refused with a 413 rather than held in memory.
+ *
+ * <p>A request holds its permit until its handler returns. The NDJSON and {@code stream=true}
+ * feeds go on writing after that for as long as the client takes to download them, but they only
+ * reach the database one short page query at a time, each under the repository's own read limit.
+ * Keeping the permit for the whole download would let a few slow clients turn every other read
+ * away.
+ */
+@Component
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private static final String ACTIVITY_STREAM_PATH = "/posts/stream";
+    // Bucket keys, kept apart so a username can never share a bucket with an address.
+    private static final String USER = "user:";
+    private static final String CLIENT = "client:";
+
+    private final boolean enabled;
+    private final DatabaseLatency latency;
+    private final ConcurrencyLimit reads;
+    private final ConcurrencyLimit writes;
+    private final UserTokenBuckets users;
+    private final int maxBodyBytes;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter errorWriter;
+    private final Counter overloaded;
+    private final Counter rateLimited;
+    private final Counter tooLarge;
+
+    public AdmissionControlFilter(
+            DatabaseLatency latency,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${socialapp.admission.enabled:true}") boolean enabled,
+            @Value("${socialapp.admission.min-limit:4}") int minLimit,
+            @Value("${socialapp.admission.max-limit:200}") int maxLimit,
+            @Value("${socialapp.admission.read-latency-target:PT0.1S}") Duration readLatencyTarget,
+            @Value("${socialapp.admission.write-latency-target:PT0.1S}") Duration writeLatencyTarget,
+            @Value("${socialapp.admission.user-rate:0}") double userRate,
+            @Value("${socialapp.admission.user-burst:20}") int userBurst,
+            @Value("${socialapp.admission.max-body-size:1MB}") DataSize maxBodySize
+    ) {
+        this.enabled = enabled;
+        this.latency = latency;
+        this.reads = new ConcurrencyLimit(minLimit, maxLimit, readLatencyTarget.toNanos());
+        this.writes = new ConcurrencyLimit(minLimit, maxLimit, writeLatencyTarget.toNanos());
+        this.users = userRate > 0 ? new UserTokenBuckets(userRate, userBurst) : null;
+        this.maxBodyBytes = Math.toIntExact(maxBodySize.toBytes());
+        this.objectMapper = objectMapper;
+        this.errorWriter = objectMapper.writerFor(ErrorResponse.class);
+        registerGauges(meterRegistry, "read", reads);
+        registerGauges(meterRegistry, "write", writes);
+        this.overloaded = Counter.builder("socialapp.admission.rejected")
+                .description("Requests turned away before reaching a controller")
+                .tag("reason", "overloaded")
+                .register(meterRegistry);
+        this.rateLimited = Counter.builder("socialapp.admission.rejected")
+                .description("Requests turned away before reaching a controller")
+                .tag("reason", "user-rate")
+                .register(meterRegistry);
+        this.tooLarge = Counter.builder("socialapp.admission.rejected")
+                .description("Requests turned away before reaching a controller")
+                .tag("reason", "body-too-large")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The activity stream holds its request open for as long as the client listens and does not
+     * touch the database, so it is kept out of the read limit.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || ACTIVITY_STREAM_PATH.equals(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean read = isRead(request.getMethod());
+        if (users != null) {
+            Map<String, Integer> tokens;
+            if (read) {
+                String viewer = request.getParameter("viewer");
+                tokens = viewer == null || viewer.isBlank() ? Map.of() : Map.of(USER + viewer.trim(), 1);
+            } else if (isJson(request.getContentType())) {
+                byte[] body = request.getContentLengthLong() > maxBodyBytes
+                        ? null
+                        : request.getInputStream().readNBytes(maxBodyBytes + 1);
+                if (body == null || body.length > maxBodyBytes) {
+                    tooLarge.increment();
+                    reject(response, HttpStatus.CONTENT_TOO_LARGE, 0, "Request body is too large");
+                    return;
+                }
+                request = new BufferedBodyRequest(request, body);
+                tokens = senders(body, CLIENT + request.getRemoteAddr());
+            } else {
+                tokens = Map.of(CLIENT + request.getRemoteAddr(), 1);
+            }
+            if (!tokens.isEmpty()) {
+                long retryAfter = users.tryAcquire(tokens);
+                if (retryAfter > 0) {
+                    rateLimited.increment();
+                    reject(response, HttpStatus.TOO_MANY_REQUESTS, retryAfter, "Too many requests for this username");
+                    return;
+                }
+            }
+        }
+        ConcurrencyLimit limit = read ? reads : writes;
+        if (!limit.tryAcquire()) {
+            overloaded.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, limit.retryAfterSeconds(), "Server is busy, retry later");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limit.release();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${socialapp.admission.window:PT0.1S}")
+    public void adjustLimits() {
+        reads.adjust(latency.drainReads());
+        writes.adjust(latency.drainWrites());
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String message)
+            throws IOException {
+        response.setStatus(status.value());
+        if (retryAfterSeconds > 0) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        errorWriter.writeValue(response.getOutputStream(), new ErrorResponse(message));
+    }
+
+    /**
+     * How many tokens to take from whom for a write body: one for its top-level {@code username},
+     * or one per item of a batch for that item's. Whatever has no username to charge, including a
+     * body that is not valid JSON, is charged to {@code client} instead; the controller then
+     * reports what is wrong with it.
+     */
+    private Map<String, Integer> senders(byte[] body, String client) {
+        Map<String, Integer> tokens = new HashMap<>();
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_ARRAY) {
+                for (JsonToken item = parser.nextToken(); item != JsonToken.END_ARRAY; item = parser.nextToken()) {
+                    String username = item == JsonToken.START_OBJECT ? username(parser) : null;
+                    if (item != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                    }
+                    tokens.merge(username != null ? USER + username : client, 1, Integer::sum);
+                }
+            } else if (first == JsonToken.START_OBJECT) {
+                String username = username(parser);
+                tokens.put(username != null ? USER + username : client, 1);
+            }
+        } catch (JacksonException ex) {
+            tokens.merge(client, 1, Integer::sum);
+        }
+        if (tokens.isEmpty()) {
+            tokens.put(client, 1);
+        }
+        return tokens;
+    }
+
+    /**
+     * Reads the rest of the object the parser has just entered and returns its non-blank
+     * {@code username}, if it has one.
+     */
+    private static String username(JsonParser parser) {
+        String username = null;
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("username".equals(name) && value == JsonToken.VALUE_STRING && !parser.getString().isBlank()) {
+                username = parser.getString().trim();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return username;
+    }
+
+    private static void registerGauges(MeterRegistry meterRegistry, String kind, ConcurrencyLimit limit) {
+        Gauge.builder("socialapp.admission.limit", limit, ConcurrencyLimit::limit)
+                .description("Requests allowed in flight at once")
+                .tag("kind", kind)
+                .register(meterRegistry);
+        Gauge.builder("socialapp.admission.in-flight", limit, ConcurrencyLimit::inFlight)
+                .description("Admitted requests still in progress")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    private static boolean isJson(String contentType) {
+        try {
+            return contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType));
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private static boolean isRead(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    /**
+     * A request whose body has already been read into memory, handed out again to whoever reads it
+     * next.
+     */
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.model.BatchResult;
+import com.contoso.socialapp.model.Comment;
+import com.contoso.socialapp.model.CommentCreateRequest;
+import com.contoso.socialapp.model.LikeBatchItem;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.PostCreateRequest;
+import com.contoso.socialapp.service.SocialAppService;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Batch variants of the post, comment and like writes. Each responds 200 with one result per
+ * item, in request order; items are validated one by one so a bad item fails on its own.
+ */
+@RestController
+public class BatchController {
+    private final SocialAppService service;
+
+    public BatchController(SocialAppService service) {
+        this.service = service;
+    }
+
+    @PostMapping("/posts:batch")
+    public List<BatchResult<Post>> createPosts(@RequestBody List<PostCreateRequest> requests) {
+        return service.createPosts(requests);
+    }
+
+    @PostMapping("/posts/{postId}/comments:batch")
+    public List<BatchResult<Comment>> createComments(
+            @PathVariable String postId,
+            @RequestBody List<CommentCreateRequest> requests
+    ) {
+        return service.createComments(ResourceIds.postId(postId), requests);
+    }
+
+    @PostMapping("/posts/likes:batch")
+    public List<BatchResult<Void>> applyLikes(@RequestBody List<LikeBatchItem> items) {
+        return service.applyLikes(items);
+    }
+}
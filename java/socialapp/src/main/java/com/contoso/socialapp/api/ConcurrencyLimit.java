@@ -0,0 +1,85 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.repository.DatabaseLatency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cap on requests in flight, moved by additive increase and multiplicative decrease. Once per
+ * window it is handed the database latency seen during that window. If the mean is over the
+ * target, the cap is cut to a fraction of what was actually in flight. If the mean was fine and
+ * the cap turned requests away, it grows by one.
+ */
+final class ConcurrencyLimit {
+    private static final double BACKOFF = 0.9;
+    private static final long MAX_RETRY_AFTER_SECONDS = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private volatile int limit;
+    private volatile long retryAfterSeconds = 1;
+
+    ConcurrencyLimit(int minLimit, int maxLimit, long targetNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = targetNanos;
+        this.limit = maxLimit;
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulateAndGet(current + 1, Math::max);
+                admitted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Called by one thread at a time. Backing off from the peak rather than from the limit makes
+     * the first cut bite even when the limit sat far above the load.
+     */
+    void adjust(DatabaseLatency.Sample sample) {
+        int peak = peakInFlight.getAndSet(inFlight.get());
+        int admittedInWindow = admitted.getAndSet(0);
+        int rejectedInWindow = rejected.getAndSet(0);
+        if (sample.count() > 0 && sample.meanNanos() > targetNanos) {
+            limit = Math.max(minLimit, (int) (Math.min(limit, peak) * BACKOFF));
+        } else if (rejectedInWindow > 0 && limit < maxLimit) {
+            limit++;
+        }
+        retryAfterSeconds = Math.clamp(rejectedInWindow / Math.max(1, admittedInWindow), 1, MAX_RETRY_AFTER_SECONDS);
+    }
+
+    /**
+     * Spreads retries out in proportion to how oversubscribed the last window was: when four
+     * requests were turned away for each one let in, callers are told to come back in four seconds
+     * rather than all returning in one and being turned away again.
+     */
+    long retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
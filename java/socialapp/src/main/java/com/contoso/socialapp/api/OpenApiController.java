@@ -1,13 +1,22 @@
 package com.contoso.socialapp.api;
 
 import com.contoso.socialapp.config.OpenApiDocumentService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Duration;
+import java.util.Locale;
 
 @RestController
 public class OpenApiController {
+    private static final MediaType YAML = MediaType.parseMediaType("text/yaml");
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(1)).cachePublic();
+
     private final OpenApiDocumentService openApiDocumentService;
 
     public OpenApiController(OpenApiDocumentService openApiDocumentService) {
@@ -15,13 +24,13 @@ public class OpenApiController {
     }
 
     @GetMapping(value = "/openapi.yaml", produces = "text/yaml")
-    public ResponseEntity<String> getOpenApiYaml() {
-        return ResponseEntity.ok(openApiDocumentService.getOpenApiYaml());
+    public ResponseEntity<byte[]> getOpenApiYaml(WebRequest request) {
+        return document(openApiDocumentService.yaml(), YAML, request);
     }
 
     @GetMapping(value = "/openapi.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Object getOpenApiJson() {
-        return openApiDocumentService.getOpenApiJson();
+    public ResponseEntity<byte[]> getOpenApiJson(WebRequest request) {
+        return document(openApiDocumentService.json(), MediaType.APPLICATION_JSON, request);
     }
 
         @GetMapping(value = "/docs", produces = MediaType.TEXT_HTML_VALUE)
@@ -50,4 +59,59 @@ public class OpenApiController {
                                 </html>
                                 """;
         }
+
+    /**
+     * Writes the prerendered bytes as they are, gzipped when the client accepts it. The servlet
+     * container's own compression is off, so nothing downstream encodes the body a second time.
+     */
+    private static ResponseEntity<byte[]> document(
+            OpenApiDocumentService.Document document,
+            MediaType contentType,
+            WebRequest request
+    ) {
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(gzip ? document.gzippedEtag() : document.etag())) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(contentType)
+                .cacheControl(CACHE_CONTROL)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(document.gzipped());
+        }
+        return response.body(document.body());
+    }
+
+    /**
+     * An entry naming gzip decides on its own, wherever it appears; {@code *} only speaks for
+     * codings the header doesn't list, so {@code *, gzip;q=0} refuses gzip.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                return !refused(parts);
+            }
+            if (name.equals("*")) {
+                wildcard = !refused(parts);
+            }
+        }
+        return wildcard;
+    }
+
+    private static boolean refused(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+            if (parameter.startsWith("q=") && parameter.substring(2).trim().matches("0(\\.0*)?")) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -1,39 +1,150 @@
 package com.contoso.socialapp.api;
 
+import com.contoso.socialapp.model.BatchResult;
 import com.contoso.socialapp.model.Comment;
 import com.contoso.socialapp.model.CommentCreateRequest;
 import com.contoso.socialapp.model.CommentUpdateRequest;
 import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Page;
 import com.contoso.socialapp.model.Post;
 import com.contoso.socialapp.model.PostCreateRequest;
 import com.contoso.socialapp.model.PostUpdateRequest;
+import com.contoso.socialapp.service.ChangeVersions;
 import com.contoso.socialapp.service.SocialAppService;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
 
 import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/posts")
 public class PostController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final SocialAppService service;
+    private final ChangeVersions versions;
+    private final ActivityStream activity;
+    private final ObjectWriter postWriter;
 
-    public PostController(SocialAppService service) {
+    public PostController(
+            SocialAppService service,
+            ChangeVersions versions,
+            ActivityStream activity,
+            ObjectMapper objectMapper
+    ) {
         this.service = service;
+        this.versions = versions;
+        this.activity = activity;
+        this.postWriter = objectMapper.writerFor(Post.class);
     }
 
     @GetMapping
-    public List<Post> listPosts() {
-        return service.listPosts();
+    public ResponseEntity<List<Post>> listPosts(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String viewer,
+            WebRequest request
+    ) {
+        if (notModified(request, versions.feed())) {
+            return null;
+        }
+        return pageResponse(service.listPosts(limit, cursor, viewer));
+    }
+
+    @GetMapping(params = "ids")
+    public List<BatchResult<Post>> getPosts(@RequestParam List<UUID> ids, WebRequest request) {
+        if (notModified(request, versions.feed())) {
+            return null;
+        }
+        return service.getPosts(ids);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<Post>> searchPosts(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            WebRequest request
+    ) {
+        if (notModified(request, versions.feed())) {
+            return null;
+        }
+        return pageResponse(service.searchPosts(q, limit, cursor));
+    }
+
+    /**
+     * The ranking only changes when a like or comment arrives, never with time alone, so the feed
+     * version still answers conditional requests.
+     */
+    @GetMapping("/trending")
+    public List<Post> trendingPosts(@RequestParam(required = false) Integer limit, WebRequest request) {
+        if (notModified(request, versions.feed())) {
+            return null;
+        }
+        return service.trendingPosts(limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPostsAsNdjson() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> {
+                    try (JsonGenerator generator = postWriter.withRootValueSeparator("\n").createGenerator(out)) {
+                        streamPosts(generator);
+                        generator.writeRaw('\n');
+                    }
+                });
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamPostsAsJsonArray() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    try (JsonGenerator generator = postWriter.createGenerator(out)) {
+                        generator.writeStartArray();
+                        streamPosts(generator);
+                        generator.writeEndArray();
+                    }
+                });
+    }
+
+    /**
+     * New posts, comments and likes as they are written. A client resumes with the Last-Event-ID
+     * header the browser's EventSource sends on reconnect.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamActivity(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        SseEmitter emitter = activity.subscribe(lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "10")
+                    .build();
+        }
+        return ResponseEntity.ok(emitter);
     }
 
     @PostMapping
@@ -43,35 +154,56 @@ public class PostController {
     }
 
     @GetMapping("/{postId}")
-    public Post getPost(@PathVariable String postId) {
-        return service.getPost(postId);
+    public Post getPost(
+            @PathVariable String postId,
+            @RequestParam(required = false) String viewer,
+            WebRequest request
+    ) {
+        UUID id = ResourceIds.postId(postId);
+        if (notModified(request, versions.post(id))) {
+            return null;
+        }
+        return service.getPost(id, viewer);
     }
 
     @PatchMapping("/{postId}")
     public Post updatePost(@PathVariable String postId, @Valid @RequestBody PostUpdateRequest request) {
-        return service.updatePost(postId, request);
+        return service.updatePost(ResourceIds.postId(postId), request);
     }
 
     @DeleteMapping("/{postId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deletePost(@PathVariable String postId) {
-        service.deletePost(postId);
+        service.deletePost(ResourceIds.postId(postId));
     }
 
     @GetMapping("/{postId}/comments")
-    public List<Comment> listComments(@PathVariable String postId) {
-        return service.listComments(postId);
+    public ResponseEntity<List<Comment>> listComments(
+            @PathVariable String postId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            WebRequest request
+    ) {
+        UUID id = ResourceIds.postId(postId);
+        if (notModified(request, versions.post(id))) {
+            return null;
+        }
+        return pageResponse(service.listComments(id, limit, cursor));
     }
 
     @PostMapping("/{postId}/comments")
     @ResponseStatus(HttpStatus.CREATED)
     public Comment createComment(@PathVariable String postId, @Valid @RequestBody CommentCreateRequest request) {
-        return service.createComment(postId, request);
+        return service.createComment(ResourceIds.postId(postId), request);
     }
 
     @GetMapping("/{postId}/comments/{commentId}")
-    public Comment getComment(@PathVariable String postId, @PathVariable String commentId) {
-        return service.getComment(postId, commentId);
+    public Comment getComment(@PathVariable String postId, @PathVariable String commentId, WebRequest request) {
+        UUID id = ResourceIds.postId(postId);
+        if (notModified(request, versions.post(id))) {
+            return null;
+        }
+        return service.getComment(id, ResourceIds.commentId(commentId));
     }
 
     @PatchMapping("/{postId}/comments/{commentId}")
@@ -80,24 +212,52 @@ public class PostController {
             @PathVariable String commentId,
             @Valid @RequestBody CommentUpdateRequest request
     ) {
-        return service.updateComment(postId, commentId, request);
+        return service.updateComment(ResourceIds.postId(postId), ResourceIds.commentId(commentId), request);
     }
 
     @DeleteMapping("/{postId}/comments/{commentId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deleteComment(@PathVariable String postId, @PathVariable String commentId) {
-        service.deleteComment(postId, commentId);
+        service.deleteComment(ResourceIds.postId(postId), ResourceIds.commentId(commentId));
     }
 
     @PostMapping("/{postId}/likes")
     @ResponseStatus(HttpStatus.CREATED)
     public void likePost(@PathVariable String postId, @Valid @RequestBody LikeRequest request) {
-        service.likePost(postId, request);
+        service.likePost(ResourceIds.postId(postId), request);
     }
 
     @DeleteMapping("/{postId}/likes")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void unlikePost(@PathVariable String postId, @Valid @RequestBody LikeRequest request) {
-        service.unlikePost(postId, request);
+        service.unlikePost(ResourceIds.postId(postId), request);
+    }
+
+    /**
+     * Answers a conditional GET from the change version alone, before the service runs a query.
+     * Sets ETag and Last-Modified on the response either way.
+     */
+    private boolean notModified(WebRequest request, ChangeVersions.Version version) {
+        return request.checkNotModified(versions.etag(version), version.modifiedAt());
+    }
+
+    private void streamPosts(JsonGenerator generator) {
+        boolean[] first = {true};
+        service.streamPosts(post -> {
+            generator.writePOJO(post);
+            if (first[0]) {
+                // Push the first row out right away; later rows go out as the buffers fill.
+                generator.flush();
+                first[0] = false;
+            }
+        });
+    }
+
+    private static <T> ResponseEntity<List<T>> pageResponse(Page<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
     }
 }
@@ -0,0 +1,30 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.exception.NotFoundException;
+
+import java.util.UUID;
+
+/**
+ * Parses the ids in request paths. A value that isn't a UUID can't name anything that exists, so
+ * it gets the same 404 as an unknown id.
+ */
+final class ResourceIds {
+    private ResourceIds() {
+    }
+
+    static UUID postId(String value) {
+        return parse(value, "Post not found");
+    }
+
+    static UUID commentId(String value) {
+        return parse(value, "Comment not found");
+    }
+
+    private static UUID parse(String value, String notFoundMessage) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException ex) {
+            throw new NotFoundException(notFoundMessage);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.contoso.socialapp.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A token bucket per key, refilled at {@code rate} tokens a second up to {@code burst}.
+ *
+ * <p>A request may take more tokens than the bucket holds, as long as it holds at least one: the
+ * bucket goes into debt and turns everything away until it has refilled past it. A batch bigger
+ * than the burst still gets through, and then costs its sender as long as that many single
+ * requests would. A bucket that has refilled completely is no different from a new one, so it is
+ * dropped once it has.
+ */
+final class UserTokenBuckets {
+    private static final long MAX_KEYS = 100_000;
+
+    private final double rate;
+    private final double ratePerNano;
+    private final double burst;
+    private final LongSupplier nanoTime;
+    private final Cache<String, Bucket> buckets;
+
+    UserTokenBuckets(double rate, int burst) {
+        this(rate, burst, System::nanoTime);
+    }
+
+    UserTokenBuckets(double rate, int burst, LongSupplier nanoTime) {
+        this.rate = rate;
+        this.ratePerNano = rate / 1e9;
+        this.burst = burst;
+        this.nanoTime = nanoTime;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(MAX_KEYS)
+                .expireAfter(Expiry.writing((String key, Bucket bucket) -> bucket.untilFull()))
+                .build();
+    }
+
+    /**
+     * Takes a token for {@code key}. Returns zero when one was available, otherwise how many
+     * seconds until one will be.
+     */
+    long tryAcquire(String key) {
+        return tryAcquire(Map.of(key, 1));
+    }
+
+    /**
+     * Takes the given number of tokens from each key's bucket, or none at all. Returns zero when
+     * every bucket could pay, otherwise how many seconds until the first that couldn't can.
+     */
+    long tryAcquire(Map<String, Integer> tokens) {
+        Map<String, Integer> taken = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> charge : tokens.entrySet()) {
+            long retryAfter = update(charge.getKey(), bucket -> bucket.take(charge.getValue()));
+            if (retryAfter > 0) {
+                taken.forEach((key, count) -> update(key, bucket -> bucket.giveBack(count)));
+                return retryAfter;
+            }
+            taken.put(charge.getKey(), charge.getValue());
+        }
+        return 0;
+    }
+
+    /**
+     * Runs {@code change} under the bucket's entry, so its new expiry is worked out from what the
+     * change left behind.
+     */
+    private long update(String key, ToLongFunction<Bucket> change) {
+        long[] result = new long[1];
+        buckets.asMap().compute(key, (name, bucket) -> {
+            Bucket current = bucket != null ? bucket : new Bucket();
+            result[0] = change.applyAsLong(current);
+            return current;
+        });
+        return result[0];
+    }
+
+    private final class Bucket {
+        private double tokens = burst;
+        private long refilledAt = nanoTime.getAsLong();
+
+        long take(int count) {
+            refill();
+            if (tokens >= 1) {
+                tokens -= count;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+        }
+
+        long giveBack(int count) {
+            refill();
+            tokens = Math.min(burst, tokens + count);
+            return 0;
+        }
+
+        Duration untilFull() {
+            return Duration.ofNanos((long) Math.ceil((burst - tokens) / ratePerNano));
+        }
+
+        private void refill() {
+            long now = nanoTime.getAsLong();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+        }
+    }
+}
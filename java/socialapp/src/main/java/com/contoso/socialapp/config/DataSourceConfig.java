@@ -0,0 +1,86 @@
+package com.contoso.socialapp.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+import org.sqlite.SQLiteConfig;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+@Configuration
+public class DataSourceConfig {
+    private final String url;
+    private final Duration busyTimeout;
+    private final DataSize cacheSize;
+    private final DataSize mmapSize;
+
+    public DataSourceConfig(
+            @Value("${spring.datasource.url}") String url,
+            @Value("${socialapp.datasource.busy-timeout:PT5S}") Duration busyTimeout,
+            @Value("${socialapp.datasource.cache-size:16MB}") DataSize cacheSize,
+            @Value("${socialapp.datasource.mmap-size:256MB}") DataSize mmapSize
+    ) {
+        this.url = url;
+        this.busyTimeout = busyTimeout;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+    }
+
+    @Bean
+    @Primary
+    public HikariDataSource dataSource() {
+        SQLiteConfig sqlite = sqliteConfig();
+        sqlite.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        HikariConfig config = hikariConfig("sqlite-writer", sqlite);
+        config.setMaximumPoolSize(1);
+        return new HikariDataSource(config);
+    }
+
+    @Bean
+    @DependsOn("dataSource")
+    public HikariDataSource readDataSource(@Value("${socialapp.datasource.read-pool-size:4}") int poolSize) {
+        HikariConfig config = hikariConfig("sqlite-reader", sqliteConfig());
+        config.setMaximumPoolSize(poolSize);
+        config.setConnectionInitSql("PRAGMA query_only = ON");
+        return new HikariDataSource(config);
+    }
+
+    @Bean
+    @Primary
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public JdbcTemplate readJdbcTemplate(@Qualifier("readDataSource") DataSource readDataSource) {
+        return new JdbcTemplate(readDataSource);
+    }
+
+    private SQLiteConfig sqliteConfig() {
+        SQLiteConfig sqlite = new SQLiteConfig();
+        sqlite.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        sqlite.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        sqlite.enforceForeignKeys(true);
+        sqlite.setBusyTimeout((int) busyTimeout.toMillis());
+        sqlite.setCacheSize((int) -cacheSize.toKilobytes());
+        sqlite.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSize.toBytes()));
+        return sqlite;
+    }
+
+    private HikariConfig hikariConfig(String poolName, SQLiteConfig sqlite) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setJdbcUrl(url);
+        config.setDataSourceProperties(sqlite.toProperties());
+        return config;
+    }
+}
@@ -1,29 +1,114 @@
 package com.contoso.socialapp.config;
 
-import org.springframework.boot.context.event.ApplicationReadyEvent;
-import org.springframework.context.event.EventListener;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Brings the schema up to date before any bean that touches the database is created, so the
+ * web server never accepts a request against a half-migrated file. Each migration runs once,
+ * in its own transaction, and is recorded in {@code schema_version}. Databases created before
+ * versioning existed already have some of these objects, so the early migrations only add
+ * what is missing.
+ *
+ * <p>SQLite cannot change a column's type in place, so some migrations rebuild a table. Those run
+ * with foreign keys switched off, as SQLite's table rebuild procedure requires: dropping the old
+ * {@code posts} table would otherwise cascade into every comment and like.
+ */
 @Component
 public class DatabaseInitializer {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseInitializer.class);
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create posts, comments and likes", DatabaseInitializer::createTables),
+            new Migration(2, "Keep like and comment counters on posts", DatabaseInitializer::addPostCounters),
+            new Migration(3, "Index the feed and comment listings", DatabaseInitializer::createListingIndexes),
+            new Migration(4, "Index likes by username", jdbc ->
+                    jdbc.execute("CREATE INDEX IF NOT EXISTS idx_likes_username ON likes (username)")),
+            new Migration(5, "Store timestamps as epoch milliseconds", DatabaseInitializer::storeTimestampsAsMillis, true),
+            new Migration(6, "Store ids as 16-byte UUIDv7 blobs", DatabaseInitializer::storeIdsAsBlobs, true),
+            new Migration(7, "Index post and comment content for full-text search", DatabaseInitializer::createSearchIndexes),
+            new Migration(8, "Record when each like was made", DatabaseInitializer::addLikeTimestamps),
+            new Migration(9, "Give search indexes a stable key into posts and comments", DatabaseInitializer::addSearchKeys, true)
+    );
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
 
-    public DatabaseInitializer(JdbcTemplate jdbcTemplate) {
+    public DatabaseInitializer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    @EventListener(ApplicationReadyEvent.class)
+    @PostConstruct
     public void initialize() {
-        jdbcTemplate.execute("PRAGMA foreign_keys = ON");
-        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS posts (" +
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INTEGER PRIMARY KEY," +
+                "description TEXT NOT NULL," +
+                "appliedAt TEXT NOT NULL" +
+                ")");
+        Set<Integer> applied = new HashSet<>(jdbcTemplate.queryForList("SELECT version FROM schema_version", Integer.class));
+        for (Migration migration : MIGRATIONS) {
+            if (applied.contains(migration.version())) {
+                continue;
+            }
+            if (migration.rebuildsTables()) {
+                // A no-op inside a transaction, so it has to be switched before the migration starts.
+                jdbcTemplate.execute("PRAGMA foreign_keys = OFF");
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(migration));
+            } finally {
+                if (migration.rebuildsTables()) {
+                    jdbcTemplate.execute("PRAGMA foreign_keys = ON");
+                }
+            }
+            log.info("Applied schema migration {}: {}", migration.version(), migration.description());
+        }
+    }
+
+    private void apply(Migration migration) {
+        if (migration.rebuildsTables()) {
+            Integer foreignKeys = jdbcTemplate.queryForObject("PRAGMA foreign_keys", Integer.class);
+            if (foreignKeys == null || foreignKeys != 0) {
+                throw new IllegalStateException("Migration " + migration.version() +
+                        " rebuilds tables and must run on the connection that switched foreign keys off");
+            }
+        }
+        migration.apply().accept(jdbcTemplate);
+        if (migration.rebuildsTables()) {
+            List<Map<String, Object>> violations = jdbcTemplate.queryForList("PRAGMA foreign_key_check");
+            if (!violations.isEmpty()) {
+                throw new IllegalStateException("Migration " + migration.version() +
+                        " would leave broken foreign keys: " + violations);
+            }
+        }
+        jdbcTemplate.update(
+                "INSERT INTO schema_version (version, description, appliedAt) VALUES (?, ?, ?)",
+                migration.version(), migration.description(), Instant.now().toString()
+        );
+    }
+
+    private static void createTables(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS posts (" +
                 "id TEXT PRIMARY KEY," +
                 "username TEXT NOT NULL," +
                 "content TEXT NOT NULL," +
                 "createdAt TEXT NOT NULL," +
                 "updatedAt TEXT NOT NULL" +
                 ")");
-        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS comments (" +
+        jdbc.execute("CREATE TABLE IF NOT EXISTS comments (" +
                 "id TEXT PRIMARY KEY," +
                 "postId TEXT NOT NULL," +
                 "username TEXT NOT NULL," +
@@ -32,11 +117,244 @@ public class DatabaseInitializer {
                 "updatedAt TEXT NOT NULL," +
                 "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE" +
                 ")");
-        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS likes (" +
+        jdbc.execute("CREATE TABLE IF NOT EXISTS likes (" +
                 "postId TEXT NOT NULL," +
                 "username TEXT NOT NULL," +
                 "PRIMARY KEY (postId, username)," +
                 "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE" +
                 ")");
     }
+
+    private static void addPostCounters(JdbcTemplate jdbc) {
+        boolean countersAdded = addColumnIfMissing(jdbc, "posts", "likeCount", "INTEGER NOT NULL DEFAULT 0");
+        countersAdded |= addColumnIfMissing(jdbc, "posts", "commentCount", "INTEGER NOT NULL DEFAULT 0");
+        createCounterTriggers(jdbc);
+        if (countersAdded) {
+            jdbc.update("UPDATE posts SET " +
+                    "likeCount = (SELECT COUNT(*) FROM likes WHERE likes.postId = posts.id), " +
+                    "commentCount = (SELECT COUNT(*) FROM comments WHERE comments.postId = posts.id)");
+        }
+    }
+
+    private static void createCounterTriggers(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS likes_after_insert AFTER INSERT ON likes BEGIN " +
+                "UPDATE posts SET likeCount = likeCount + 1 WHERE id = NEW.postId; END");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS likes_after_delete AFTER DELETE ON likes BEGIN " +
+                "UPDATE posts SET likeCount = likeCount - 1 WHERE id = OLD.postId; END");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS comments_after_insert AFTER INSERT ON comments BEGIN " +
+                "UPDATE posts SET commentCount = commentCount + 1 WHERE id = NEW.postId; END");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS comments_after_delete AFTER DELETE ON comments BEGIN " +
+                "UPDATE posts SET commentCount = commentCount - 1 WHERE id = OLD.postId; END");
+    }
+
+    private static void createListingIndexes(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_posts_createdAt_id ON posts (createdAt, id)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_comments_postId_createdAt_id ON comments (postId, createdAt, id)");
+    }
+
+    /**
+     * Rebuilds posts and comments with INTEGER epoch-millisecond timestamps. ISO strings only sort
+     * correctly while every value has the same number of fractional digits, and they make each
+     * index key several times wider than it needs to be. Values parse with SQLite's own date
+     * functions; a value that doesn't parse fails the migration on the NOT NULL constraint.
+     */
+    private static void storeTimestampsAsMillis(JdbcTemplate jdbc) {
+        dropCounterTriggers(jdbc);
+        rebuildTable(jdbc, "posts",
+                "(id TEXT PRIMARY KEY," +
+                        "username TEXT NOT NULL," +
+                        "content TEXT NOT NULL," +
+                        "createdAt INTEGER NOT NULL," +
+                        "updatedAt INTEGER NOT NULL," +
+                        "likeCount INTEGER NOT NULL DEFAULT 0," +
+                        "commentCount INTEGER NOT NULL DEFAULT 0)",
+                "id, username, content, " + toMillis("createdAt") + ", " + toMillis("updatedAt") + ", likeCount, commentCount");
+        rebuildTable(jdbc, "comments",
+                "(id TEXT PRIMARY KEY," +
+                        "postId TEXT NOT NULL," +
+                        "username TEXT NOT NULL," +
+                        "content TEXT NOT NULL," +
+                        "createdAt INTEGER NOT NULL," +
+                        "updatedAt INTEGER NOT NULL," +
+                        "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE)",
+                "id, postId, username, content, " + toMillis("createdAt") + ", " + toMillis("updatedAt"));
+        createListingIndexes(jdbc);
+        createCounterTriggers(jdbc);
+    }
+
+    /**
+     * Rebuilds every table with 16-byte BLOB ids in place of 36-character UUID strings, which
+     * shrinks the primary keys and every index and foreign key that repeats them. Likes become a
+     * WITHOUT ROWID table: its primary key already holds every column, so the rowid b-tree was a
+     * second copy of the same data.
+     */
+    private static void storeIdsAsBlobs(JdbcTemplate jdbc) {
+        requireUuids(jdbc, "posts", "id");
+        requireUuids(jdbc, "comments", "id");
+        dropCounterTriggers(jdbc);
+        rebuildTable(jdbc, "posts",
+                "(id BLOB NOT NULL PRIMARY KEY," +
+                        "username TEXT NOT NULL," +
+                        "content TEXT NOT NULL," +
+                        "createdAt INTEGER NOT NULL," +
+                        "updatedAt INTEGER NOT NULL," +
+                        "likeCount INTEGER NOT NULL DEFAULT 0," +
+                        "commentCount INTEGER NOT NULL DEFAULT 0)",
+                toBlob("id") + ", username, content, createdAt, updatedAt, likeCount, commentCount");
+        rebuildTable(jdbc, "comments",
+                "(id BLOB NOT NULL PRIMARY KEY," +
+                        "postId BLOB NOT NULL," +
+                        "username TEXT NOT NULL," +
+                        "content TEXT NOT NULL," +
+                        "createdAt INTEGER NOT NULL," +
+                        "updatedAt INTEGER NOT NULL," +
+                        "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE)",
+                toBlob("id") + ", " + toBlob("postId") + ", username, content, createdAt, updatedAt");
+        rebuildTable(jdbc, "likes",
+                "(postId BLOB NOT NULL," +
+                        "username TEXT NOT NULL," +
+                        "PRIMARY KEY (postId, username)," +
+                        "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE" +
+                        ") WITHOUT ROWID",
+                toBlob("postId") + ", username");
+        createListingIndexes(jdbc);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_likes_username ON likes (username)");
+        createCounterTriggers(jdbc);
+    }
+
+    /**
+     * Adds an FTS5 index over the content of posts and of comments. The indexes are external
+     * content tables, so they hold only the inverted index and read the text itself back from the
+     * source rows by rowid; triggers keep them in step with every insert, edit and delete,
+     * including the comment deletes a post delete cascades into.
+     */
+    private static void createSearchIndexes(JdbcTemplate jdbc) {
+        createSearchIndex(jdbc, "posts", "rowid");
+        createSearchIndex(jdbc, "comments", "rowid");
+    }
+
+    /**
+     * Rebuilds posts and comments around an INTEGER PRIMARY KEY, {@code seq}, and points their
+     * search indexes at it. The indexes used to match rows by implicit rowid, which SQLite is free
+     * to renumber in a VACUUM or a table rebuild, leaving searches to return the wrong rows. An
+     * INTEGER PRIMARY KEY is the rowid under a name, and keeps its values. Existing rowids are
+     * carried over, and the ids keep the automatic unique index their primary key had.
+     */
+    private static void addSearchKeys(JdbcTemplate jdbc) {
+        dropCounterTriggers(jdbc);
+        dropSearchIndexes(jdbc);
+        rebuildTable(jdbc, "posts",
+                "(seq INTEGER PRIMARY KEY," +
+                        "id BLOB NOT NULL UNIQUE," +
+                        "username TEXT NOT NULL," +
+                        "content TEXT NOT NULL," +
+                        "createdAt INTEGER NOT NULL," +
+                        "updatedAt INTEGER NOT NULL," +
+                        "likeCount INTEGER NOT NULL DEFAULT 0," +
+                        "commentCount INTEGER NOT NULL DEFAULT 0)",
+                "rowid, id, username, content, createdAt, updatedAt, likeCount, commentCount");
+        rebuildTable(jdbc, "comments",
+                "(seq INTEGER PRIMARY KEY," +
+                        "id BLOB NOT NULL UNIQUE," +
+                        "postId BLOB NOT NULL," +
+                        "username TEXT NOT NULL," +
+                        "content TEXT NOT NULL," +
+                        "createdAt INTEGER NOT NULL," +
+                        "updatedAt INTEGER NOT NULL," +
+                        "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE)",
+                "rowid, id, postId, username, content, createdAt, updatedAt");
+        createListingIndexes(jdbc);
+        createCounterTriggers(jdbc);
+        createSearchIndex(jdbc, "posts", "seq");
+        createSearchIndex(jdbc, "comments", "seq");
+    }
+
+    private static void createSearchIndex(JdbcTemplate jdbc, String table, String key) {
+        String index = table + "_fts";
+        jdbc.execute("CREATE VIRTUAL TABLE IF NOT EXISTS " + index + " USING fts5(" +
+                "content, content='" + table + "', content_rowid='" + key + "', tokenize='unicode61 remove_diacritics 2')");
+        jdbc.execute("INSERT INTO " + index + " (" + index + ") VALUES ('rebuild')");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS " + index + "_after_insert AFTER INSERT ON " + table + " BEGIN " +
+                "INSERT INTO " + index + " (rowid, content) VALUES (NEW." + key + ", NEW.content); END");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS " + index + "_after_delete AFTER DELETE ON " + table + " BEGIN " +
+                "INSERT INTO " + index + " (" + index + ", rowid, content) VALUES ('delete', OLD." + key + ", OLD.content); END");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS " + index + "_after_update AFTER UPDATE OF content ON " + table + " BEGIN " +
+                "INSERT INTO " + index + " (" + index + ", rowid, content) VALUES ('delete', OLD." + key + ", OLD.content); " +
+                "INSERT INTO " + index + " (rowid, content) VALUES (NEW." + key + ", NEW.content); END");
+    }
+
+    private static void dropSearchIndexes(JdbcTemplate jdbc) {
+        // Like the counter triggers, these name the index tables and would stop a rename.
+        for (String index : List.of("posts_fts", "comments_fts")) {
+            for (String trigger : List.of("_after_insert", "_after_delete", "_after_update")) {
+                jdbc.execute("DROP TRIGGER IF EXISTS " + index + trigger);
+            }
+            jdbc.execute("DROP TABLE IF EXISTS " + index);
+        }
+    }
+
+    /**
+     * Gives likes a creation time so the trending index can weigh them by age. Likes made before
+     * this migration have no recorded time and take their post's instead.
+     */
+    private static void addLikeTimestamps(JdbcTemplate jdbc) {
+        if (addColumnIfMissing(jdbc, "likes", "createdAt", "INTEGER NOT NULL DEFAULT 0")) {
+            jdbc.update("UPDATE likes SET createdAt = (SELECT createdAt FROM posts WHERE posts.id = likes.postId)");
+        }
+    }
+
+    private static void dropCounterTriggers(JdbcTemplate jdbc) {
+        // The triggers name posts in their bodies, which would stop a rebuilt table's rename.
+        for (String trigger : List.of("likes_after_insert", "likes_after_delete", "comments_after_insert", "comments_after_delete")) {
+            jdbc.execute("DROP TRIGGER IF EXISTS " + trigger);
+        }
+    }
+
+    /**
+     * Copies a table into a new definition, then swaps the copy in under the old name. Indexes on
+     * the old table are dropped with it, so callers recreate them afterwards.
+     */
+    private static void rebuildTable(JdbcTemplate jdbc, String table, String definition, String select) {
+        jdbc.execute("CREATE TABLE " + table + "_new " + definition);
+        jdbc.update("INSERT INTO " + table + "_new SELECT " + select + " FROM " + table);
+        jdbc.execute("DROP TABLE " + table);
+        jdbc.execute("ALTER TABLE " + table + "_new RENAME TO " + table);
+    }
+
+    private static void requireUuids(JdbcTemplate jdbc, String table, String column) {
+        Integer invalid = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM " + table + " WHERE length(" + toBlob(column) + ") IS NOT 16",
+                Integer.class
+        );
+        if (invalid != null && invalid > 0) {
+            throw new IllegalStateException(invalid + " rows in " + table + " have a " + column + " that is not a UUID");
+        }
+    }
+
+    private static String toMillis(String column) {
+        return "CAST(round(unixepoch(" + column + ", 'subsec') * 1000) AS INTEGER)";
+    }
+
+    private static String toBlob(String column) {
+        return "unhex(replace(" + column + ", '-', ''))";
+    }
+
+    private static boolean addColumnIfMissing(JdbcTemplate jdbc, String table, String column, String definition) {
+        List<String> columns = jdbc.query(
+                "SELECT name FROM pragma_table_info(?)",
+                (rs, rowNum) -> rs.getString("name"),
+                table
+        );
+        if (columns.contains(column)) {
+            return false;
+        }
+        jdbc.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        return true;
+    }
+
+    private record Migration(int version, String description, Consumer<JdbcTemplate> apply, boolean rebuildsTables) {
+        Migration(int version, String description, Consumer<JdbcTemplate> apply) {
+            this(version, description, apply, false);
+        }
+    }
 }
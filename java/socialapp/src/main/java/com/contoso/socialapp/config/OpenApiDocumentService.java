@@ -2,38 +2,87 @@ package com.contoso.socialapp.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * The OpenAPI document, rendered once at startup as YAML and JSON bytes plus a gzipped copy of
+ * each, so serving it is a write of bytes that already exist. The build copies the repository's
+ * {@code openapi.yaml} onto the classpath, which keeps startup independent of the working directory.
+ */
 @Component
 public class OpenApiDocumentService {
+    private static final String LOCATION = "openapi.yaml";
+
     private final ObjectMapper jsonMapper = new ObjectMapper();
     private final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
-    private String openApiYaml;
-    private Object openApiJson;
+    private Document yaml;
+    private Document json;
 
     @PostConstruct
     public void loadOpenApi() throws IOException {
-        Path openApiPath = Paths.get("").toAbsolutePath()
-                .resolve("..")
-                .resolve("..")
-                .resolve("openapi.yaml")
-                .normalize();
-        openApiYaml = Files.readString(openApiPath);
-        openApiJson = yamlMapper.readValue(openApiYaml, Object.class);
-        openApiJson = jsonMapper.convertValue(openApiJson, Object.class);
+        byte[] source;
+        try (InputStream in = new ClassPathResource(LOCATION).getInputStream()) {
+            source = in.readAllBytes();
+        }
+        Object tree = yamlMapper.readValue(source, Object.class);
+        String version = version(source);
+        yaml = new Document(source, gzip(source), version);
+        byte[] rendered = jsonMapper.writeValueAsBytes(tree);
+        json = new Document(rendered, gzip(rendered), version);
+    }
+
+    public Document yaml() {
+        return yaml;
+    }
+
+    public Document json() {
+        return json;
+    }
+
+    /**
+     * Both forms share a version taken from the YAML's content, so the ETag only changes when the
+     * document does and stays the same across restarts and instances.
+     */
+    private static String version(byte[] source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source), 0, 8);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
     }
 
-    public String getOpenApiYaml() {
-        return openApiYaml;
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
     }
 
-    public Object getOpenApiJson() {
-        return openApiJson;
+    /**
+     * One rendering of the document. The gzipped bytes are a different representation, so they
+     * get their own strong ETag.
+     */
+    public record Document(byte[] body, byte[] gzipped, String version) {
+        public String etag() {
+            return "\"" + version + "\"";
+        }
+
+        public String gzippedEtag() {
+            return "\"" + version + "-gzip\"";
+        }
     }
 }
@@ -1,6 +1,16 @@
 package com.contoso.socialapp.config;
 
+import com.contoso.socialapp.api.AdmissionControlFilter;
+import com.contoso.socialapp.api.PostController;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.tomcat.ConfigurableTomcatWebServerFactory;
+import org.springframework.boot.tomcat.autoconfigure.TomcatVirtualThreadsWebServerFactoryCustomizer;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -12,6 +22,39 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedOrigins("*")
                 .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders(PostController.NEXT_CURSOR_HEADER, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED)
                 .maxAge(3600);
     }
+
+    /**
+     * Only the posts API goes through admission control; docs and actuator endpoints stay reachable
+     * while it sheds load. Ordered after the observation filter so shed requests still show up in
+     * the HTTP server metrics.
+     */
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlRegistration(AdmissionControlFilter filter) {
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/posts", "/posts/*", "/posts:batch");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    /**
+     * Boot only runs requests on virtual threads through a customizer behind a condition on
+     * {@code spring.threads.virtual.enabled}. The container starts from AOT-generated bean
+     * definitions, where that condition was settled at build time, so this one reads the property
+     * when the context starts instead. Other beans Boot picks by the same property, such as the
+     * task scheduler, keep what the build chose.
+     */
+    @Bean
+    public WebServerFactoryCustomizer<ConfigurableTomcatWebServerFactory> virtualThreadRequests(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        TomcatVirtualThreadsWebServerFactoryCustomizer customizer = new TomcatVirtualThreadsWebServerFactoryCustomizer();
+        return factory -> {
+            if (virtualThreads) {
+                customizer.customize(factory);
+            }
+        };
+    }
 }
@@ -0,0 +1,15 @@
+package com.contoso.socialapp.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one item in a batch request, in the same position as the item it answers. Carries
+ * the status the item would have received as a single request, plus either the result or the error.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchResult<T>(
+        int status,
+        T item,
+        String error
+) {
+}
@@ -1,11 +1,14 @@
 package com.contoso.socialapp.model;
 
+import java.time.Instant;
+import java.util.UUID;
+
 public record Comment(
-        String id,
-        String postId,
+        UUID id,
+        UUID postId,
         String username,
         String content,
-        String createdAt,
-        String updatedAt
+        Instant createdAt,
+        Instant updatedAt
 ) {
 }
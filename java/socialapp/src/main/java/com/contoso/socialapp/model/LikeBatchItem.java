@@ -0,0 +1,13 @@
+package com.contoso.socialapp.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.UUID;
+
+public record LikeBatchItem(
+        @NotNull(message = "postId is required") UUID postId,
+        @NotBlank(message = "username is required") String username,
+        @NotNull(message = "liked is required") Boolean liked
+) {
+}
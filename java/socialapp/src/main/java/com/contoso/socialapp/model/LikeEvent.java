@@ -0,0 +1,11 @@
+package com.contoso.socialapp.model;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record LikeEvent(
+        UUID postId,
+        String username,
+        Instant likedAt
+) {
+}
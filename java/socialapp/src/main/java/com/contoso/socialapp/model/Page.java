@@ -0,0 +1,9 @@
+package com.contoso.socialapp.model;
+
+import java.util.List;
+
+public record Page<T>(
+        List<T> items,
+        String nextCursor
+) {
+}
@@ -1,12 +1,29 @@
 package com.contoso.socialapp.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A post as the API returns it. {@code likedByViewer} is only filled in, and only serialized, when
+ * the request named a viewer.
+ */
 public record Post(
-        String id,
+        UUID id,
         String username,
         String content,
-        String createdAt,
-        String updatedAt,
+        Instant createdAt,
+        Instant updatedAt,
         int likeCount,
-        int commentCount
+        int commentCount,
+        @JsonInclude(JsonInclude.Include.NON_NULL) Boolean likedByViewer
 ) {
+    public Post(UUID id, String username, String content, Instant createdAt, Instant updatedAt, int likeCount, int commentCount) {
+        this(id, username, content, createdAt, updatedAt, likeCount, commentCount, null);
+    }
+
+    public Post withLikedByViewer(boolean liked) {
+        return new Post(id, username, content, createdAt, updatedAt, likeCount, commentCount, liked);
+    }
 }
@@ -0,0 +1,46 @@
+package com.contoso.socialapp.model;
+
+import com.contoso.socialapp.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a relevance-ordered result list: the last result's score and id. Scores depend on
+ * the whole index, so a page fetched after new content was indexed can repeat or skip a result
+ * near the boundary.
+ */
+public record SearchCursor(
+        double rank,
+        UUID id
+) {
+    private static final char SEPARATOR = '|';
+
+    public String encode() {
+        String raw = Double.toString(rank) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        int separator = raw.indexOf(SEPARATOR);
+        if (separator <= 0 || separator == raw.length() - 1) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        try {
+            double rank = Double.parseDouble(raw.substring(0, separator));
+            if (!Double.isFinite(rank)) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            return new SearchCursor(rank, UUID.fromString(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.contoso.socialapp.repository;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How long repository reads and writes take as their callers see it, waits for a read permit or
+ * for the write queue included. Accumulates until drained, so each drain covers the calls since
+ * the previous one.
+ */
+@Component
+public class DatabaseLatency {
+    private final Window reads = new Window();
+    private final Window writes = new Window();
+
+    void recordRead(long nanos) {
+        reads.record(nanos);
+    }
+
+    void recordWrite(long nanos) {
+        writes.record(nanos);
+    }
+
+    public Sample drainReads() {
+        return reads.drain();
+    }
+
+    public Sample drainWrites() {
+        return writes.drain();
+    }
+
+    public record Sample(long count, long meanNanos) {
+    }
+
+    private static final class Window {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            totalNanos.add(nanos);
+            count.increment();
+        }
+
+        /**
+         * Not atomic across the two adders: a call recorded in between lands in this window's count
+         * or the next one's, which only nudges a mean that is read as a trend anyway.
+         */
+        Sample drain() {
+            long calls = count.sumThenReset();
+            long total = totalNanos.sumThenReset();
+            return new Sample(calls, calls == 0 ? 0 : total / calls);
+        }
+    }
+}
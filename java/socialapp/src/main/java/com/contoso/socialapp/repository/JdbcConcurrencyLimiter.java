@@ -0,0 +1,81 @@
+package com.contoso.socialapp.repository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Component
+public class JdbcConcurrencyLimiter {
+    private final Semaphore permits;
+    private final long acquireTimeoutNanos;
+    private final Timer acquireWait;
+    private final DatabaseLatency latency;
+
+    public JdbcConcurrencyLimiter(
+            MeterRegistry meterRegistry,
+            DatabaseLatency latency,
+            @Value("${socialapp.datasource.read-pool-size:4}") int maxConcurrentReads,
+            @Value("${socialapp.datasource.acquire-timeout:PT5S}") Duration acquireTimeout
+    ) {
+        this.permits = new Semaphore(maxConcurrentReads, true);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.latency = latency;
+        Gauge.builder("socialapp.jdbc.read.waiting", permits, Semaphore::getQueueLength)
+                .description("Callers waiting for a read permit")
+                .register(meterRegistry);
+        Gauge.builder("socialapp.jdbc.read.active", permits, p -> maxConcurrentReads - p.availablePermits())
+                .description("Reads currently holding a permit")
+                .register(meterRegistry);
+        this.acquireWait = Timer.builder("socialapp.jdbc.read.acquire")
+                .description("Time spent waiting for a read permit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Supplier<T> query) {
+        long started = System.nanoTime();
+        try {
+            return withPermit(started, query);
+        } finally {
+            latency.recordRead(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Like {@link #call}, but for reads that hand rows to a consumer as they go. How long those take
+     * is up to the consumer, so they are left out of {@link DatabaseLatency}. The permit is held
+     * until the consumer has seen the last row, so the consumer must never wait on a client.
+     */
+    public void stream(Runnable query) {
+        withPermit(System.nanoTime(), () -> {
+            query.run();
+            return null;
+        });
+    }
+
+    private <T> T withPermit(long started, Supplier<T> query) {
+        try {
+            boolean acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+            acquireWait.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                throw new TransientDataAccessResourceException("Timed out waiting for a read connection");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("Interrupted while waiting for a read connection", ex);
+        }
+        try {
+            return query.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -1,172 +1,428 @@
 package com.contoso.socialapp.repository;
 
+import com.contoso.socialapp.model.PageCursor;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.SearchCursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Repository
+@DependsOn("databaseInitializer")
 public class SocialAppRepository {
-    private final JdbcTemplate jdbcTemplate;
+    private static final int STREAM_FETCH_SIZE = 256;
+    private static final JsonMapper JSON = JsonMapper.builder().build();
 
-    public SocialAppRepository(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    private final WriteQueue writes;
+    private final JdbcConcurrencyLimiter reads;
+    private final JdbcTemplate readJdbcTemplate;
+    private final Map<SqlStatement, Timer> timers = new EnumMap<>(SqlStatement.class);
+
+    public SocialAppRepository(
+            WriteQueue writes,
+            JdbcConcurrencyLimiter reads,
+            @Qualifier("readJdbcTemplate") JdbcTemplate readJdbcTemplate,
+            MeterRegistry meterRegistry
+    ) {
+        this.writes = writes;
+        this.reads = reads;
+        this.readJdbcTemplate = readJdbcTemplate;
+        for (SqlStatement statement : SqlStatement.values()) {
+            timers.put(statement, Timer.builder("socialapp.db.statement")
+                    .description("Time SQLite spends executing one statement, excluding permit and queue waits")
+                    .tag("statement", statement.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
     }
 
-    public List<PostData> findAllPosts() {
-        return jdbcTemplate.query(
-                "SELECT id, username, content, createdAt, updatedAt FROM posts ORDER BY createdAt DESC",
-                postRowMapper()
-        );
+    public List<Post> findAllPosts() {
+        return query(SqlStatement.FIND_ALL_POSTS, postRowMapper());
     }
 
-    public Optional<PostData> findPostById(String postId) {
-        List<PostData> rows = jdbcTemplate.query(
-                "SELECT id, username, content, createdAt, updatedAt FROM posts WHERE id=?",
-                postRowMapper(),
-                postId
-        );
-        return rows.stream().findFirst();
+    public List<Post> findPostsPage(PageCursor after, int limit) {
+        if (after == null) {
+            return query(SqlStatement.FIND_POSTS_FIRST_PAGE, postRowMapper(), limit);
+        }
+        return query(SqlStatement.FIND_POSTS_AFTER, postRowMapper(), after.createdAt().toEpochMilli(), bytes(after.id()), limit);
     }
 
-    public void insertPost(String id, String username, String content, String createdAt, String updatedAt) {
-        jdbcTemplate.update(
-                "INSERT INTO posts (id, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?)",
-                id, username, content, createdAt, updatedAt
-        );
+    public Optional<Post> findPostById(UUID postId) {
+        return query(SqlStatement.FIND_POST_BY_ID, postRowMapper(), bytes(postId)).stream().findFirst();
     }
 
-    public void updatePost(String postId, String username, String content, String updatedAt) {
-        jdbcTemplate.update(
-                "UPDATE posts SET username=?, content=?, updatedAt=? WHERE id=?",
-                username, content, updatedAt, postId
-        );
+    /**
+     * Looks up many posts in one statement. The ids travel as a single JSON array of hex strings,
+     * so the statement text and its plan stay the same whatever the batch size.
+     */
+    public List<Post> findPostsByIds(List<UUID> postIds) {
+        return query(SqlStatement.FIND_POSTS_BY_IDS, postRowMapper(), jsonIds(postIds));
     }
 
-    public void deletePost(String postId) {
-        jdbcTemplate.update("DELETE FROM posts WHERE id=?", postId);
+    /**
+     * Ranks posts against an FTS5 match expression, counting a match in any of a post's comments
+     * as a match for the post.
+     */
+    public List<SearchHit> searchPosts(String match, SearchCursor after, int limit) {
+        RowMapper<Post> postMapper = postRowMapper();
+        RowMapper<SearchHit> mapper = (rs, rowNum) -> new SearchHit(postMapper.mapRow(rs, rowNum), rs.getDouble("rank"));
+        if (after == null) {
+            return query(SqlStatement.SEARCH_POSTS_FIRST_PAGE, mapper, match, match, limit);
+        }
+        return query(SqlStatement.SEARCH_POSTS_AFTER, mapper, match, match, after.rank(), bytes(after.id()), limit);
     }
 
-    public List<CommentData> findCommentsByPostId(String postId) {
-        return jdbcTemplate.query(
-                "SELECT id, postId, username, content, createdAt, updatedAt FROM comments WHERE postId=? ORDER BY createdAt ASC",
-                commentRowMapper(),
-                postId
-        );
+    public void insertPost(UUID id, String username, String content, Instant createdAt, Instant updatedAt) {
+        update(SqlStatement.INSERT_POST, bytes(id), username, content, createdAt.toEpochMilli(), updatedAt.toEpochMilli());
     }
 
-    public Optional<CommentData> findCommentById(String postId, String commentId) {
-        List<CommentData> rows = jdbcTemplate.query(
-                "SELECT id, postId, username, content, createdAt, updatedAt FROM comments WHERE id=? AND postId=?",
-                commentRowMapper(),
-                commentId, postId
-        );
-        return rows.stream().findFirst();
+    public void insertPosts(List<Post> posts) {
+        writes.execute(jdbc -> timers.get(SqlStatement.INSERT_POST).record(() -> jdbc.batchUpdate(
+                SqlStatement.INSERT_POST.sql(),
+                posts.stream()
+                        .map(post -> new Object[]{
+                                bytes(post.id()), post.username(), post.content(),
+                                post.createdAt().toEpochMilli(), post.updatedAt().toEpochMilli()
+                        })
+                        .toList()
+        )));
     }
 
-    public void insertComment(String id, String postId, String username, String content, String createdAt, String updatedAt) {
-        jdbcTemplate.update(
-                "INSERT INTO comments (id, postId, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?, ?)",
-                id, postId, username, content, createdAt, updatedAt
-        );
+    public boolean updatePost(UUID postId, String username, String content, Instant updatedAt) {
+        return update(SqlStatement.UPDATE_POST, username, content, updatedAt.toEpochMilli(), bytes(postId)) > 0;
+    }
+
+    public void deletePost(UUID postId) {
+        update(SqlStatement.DELETE_POST, bytes(postId));
     }
 
-    public void updateComment(String postId, String commentId, String username, String content, String updatedAt) {
-        jdbcTemplate.update(
-                "UPDATE comments SET username=?, content=?, updatedAt=? WHERE id=? AND postId=?",
-                username, content, updatedAt, commentId, postId
+    public List<CommentData> findCommentsPage(UUID postId, PageCursor after, int limit) {
+        if (after == null) {
+            return query(SqlStatement.FIND_COMMENTS_FIRST_PAGE, commentRowMapper(), bytes(postId), limit);
+        }
+        return query(
+                SqlStatement.FIND_COMMENTS_AFTER, commentRowMapper(),
+                bytes(postId), after.createdAt().toEpochMilli(), bytes(after.id()), limit
         );
     }
 
-    public void deleteComment(String postId, String commentId) {
-        jdbcTemplate.update("DELETE FROM comments WHERE id=? AND postId=?", commentId, postId);
+    public Optional<CommentData> findCommentById(UUID postId, UUID commentId) {
+        return query(SqlStatement.FIND_COMMENT_BY_ID, commentRowMapper(), bytes(commentId), bytes(postId)).stream().findFirst();
     }
 
-    public int countLikes(String postId) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM likes WHERE postId=?",
-                Integer.class,
-                postId
-        );
-        return count == null ? 0 : count;
+    /**
+     * Returns false when the post doesn't exist. The foreign key decides that in the same statement,
+     * so a post deleted concurrently can never be left with an orphaned comment.
+     */
+    public boolean insertComment(UUID id, UUID postId, String username, String content, Instant createdAt, Instant updatedAt) {
+        return writes.execute(jdbc -> unlessPostMissing(() -> {
+            execute(jdbc, SqlStatement.INSERT_COMMENT,
+                    bytes(id), bytes(postId), username, content, createdAt.toEpochMilli(), updatedAt.toEpochMilli());
+            return true;
+        }, false));
     }
 
-    public int countComments(String postId) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM comments WHERE postId=?",
-                Integer.class,
-                postId
-        );
-        return count == null ? 0 : count;
+    /**
+     * Inserts every comment or, when their post doesn't exist, none of them and returns false.
+     */
+    public boolean insertComments(List<CommentData> comments) {
+        return writes.execute(jdbc -> unlessPostMissing(() -> {
+            timers.get(SqlStatement.INSERT_COMMENT).record(() -> jdbc.batchUpdate(
+                    SqlStatement.INSERT_COMMENT.sql(),
+                    comments.stream()
+                            .map(comment -> new Object[]{
+                                    bytes(comment.id()), bytes(comment.postId()), comment.username(), comment.content(),
+                                    comment.createdAt().toEpochMilli(), comment.updatedAt().toEpochMilli()
+                            })
+                            .toList()
+            ));
+            return true;
+        }, false));
     }
 
-    public boolean postExists(String postId) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM posts WHERE id=?",
-                Integer.class,
-                postId
-        );
-        return count != null && count > 0;
+    public void updateComment(UUID postId, UUID commentId, String username, String content, Instant updatedAt) {
+        update(SqlStatement.UPDATE_COMMENT, username, content, updatedAt.toEpochMilli(), bytes(commentId), bytes(postId));
     }
 
-    public boolean commentExists(String postId, String commentId) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM comments WHERE id=? AND postId=?",
-                Integer.class,
-                commentId, postId
-        );
-        return count != null && count > 0;
+    public void deleteComment(UUID postId, UUID commentId) {
+        update(SqlStatement.DELETE_COMMENT, bytes(commentId), bytes(postId));
+    }
+
+    public boolean postExists(UUID postId) {
+        return exists(SqlStatement.POST_EXISTS, bytes(postId));
     }
 
-    public boolean likeExists(String postId, String username) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM likes WHERE postId=? AND username=?",
-                Integer.class,
-                postId, username
+    public boolean commentExists(UUID postId, UUID commentId) {
+        return exists(SqlStatement.COMMENT_EXISTS, bytes(commentId), bytes(postId));
+    }
+
+    /**
+     * Which of the given posts {@code username} has liked, in one query. SQLite answers it with a
+     * search of {@code idx_likes_username} for each post, on (username, postId) since the index of
+     * a WITHOUT ROWID table carries the primary key, so the likes table itself is not read.
+     */
+    public Set<UUID> findLikedPostIds(String username, List<UUID> postIds) {
+        return new HashSet<>(query(
+                SqlStatement.FIND_LIKED_POST_IDS, (rs, rowNum) -> uuid(rs, "postId"), jsonIds(postIds), username
+        ));
+    }
+
+    public boolean likeExists(UUID postId, String username) {
+        return exists(SqlStatement.LIKE_EXISTS, bytes(postId), username);
+    }
+
+    /**
+     * Whether each like's post exists and whether the like is already stored, in the order given,
+     * for a whole batch in one query.
+     */
+    public List<LikeState> findLikeStates(List<LikeData> likes) {
+        List<List<String>> items = likes.stream()
+                .map(like -> List.of(HexFormat.of().formatHex(bytes(like.postId())), like.username()))
+                .toList();
+        return query(
+                SqlStatement.FIND_LIKE_STATES,
+                (rs, rowNum) -> new LikeState(rs.getBoolean("postExists"), rs.getBoolean("liked")),
+                JSON.writeValueAsString(items)
         );
+    }
+
+    /**
+     * Likes a post in one statement: the primary key turns a duplicate into a no-op and the
+     * foreign key rejects a missing post, so concurrent likes need no check beforehand.
+     */
+    public LikeOutcome insertLike(UUID postId, String username, Instant likedAt) {
+        return writes.execute(jdbc -> unlessPostMissing(
+                () -> execute(jdbc, SqlStatement.INSERT_LIKE, bytes(postId), username, likedAt.toEpochMilli()) > 0
+                        ? LikeOutcome.CHANGED
+                        : LikeOutcome.UNCHANGED,
+                LikeOutcome.POST_NOT_FOUND
+        ));
+    }
+
+    /**
+     * Removes a like in one statement. Only when nothing was deleted does it look for the post,
+     * to tell a like that was never there from a post that isn't.
+     */
+    public LikeOutcome deleteLike(UUID postId, String username) {
+        byte[] key = bytes(postId);
+        return writes.execute(jdbc -> execute(jdbc, SqlStatement.DELETE_LIKE, key, username) > 0
+                ? LikeOutcome.CHANGED
+                : postExists(jdbc, key) ? LikeOutcome.UNCHANGED : LikeOutcome.POST_NOT_FOUND);
+    }
+
+    /**
+     * Writes a batch of likes and unlikes in one transaction, each like stamped with the time it
+     * was made. Returns how many rows each like in {@code added} inserted, which is zero when it
+     * was already stored or its post is gone.
+     */
+    public int[] applyLikeChanges(List<NewLike> added, List<LikeData> removed) {
+        return writes.execute(jdbc -> {
+            int[] inserted = timers.get(SqlStatement.INSERT_LIKE_IF_POST_EXISTS).record(() -> jdbc.batchUpdate(
+                    SqlStatement.INSERT_LIKE_IF_POST_EXISTS.sql(),
+                    added.stream()
+                            .map(like -> new Object[]{
+                                    bytes(like.postId()), like.username(), like.likedAt().toEpochMilli(), bytes(like.postId())
+                            })
+                            .toList()
+            ));
+            timers.get(SqlStatement.DELETE_LIKE).record(() -> jdbc.batchUpdate(
+                    SqlStatement.DELETE_LIKE.sql(),
+                    removed.stream().map(like -> new Object[]{bytes(like.postId()), like.username()}).toList()
+            ));
+            return inserted;
+        });
+    }
+
+    /**
+     * Applies each like or unlike in order inside one write transaction and reports what happened
+     * to each, so one missing post or duplicate like doesn't fail the others.
+     */
+    public List<LikeOutcome> applyLikes(List<LikeChange> changes, Instant likedAt) {
+        return writes.execute(jdbc -> changes.stream().map(change -> {
+            byte[] postId = bytes(change.postId());
+            int rows = change.liked()
+                    ? execute(jdbc, SqlStatement.INSERT_LIKE_IF_POST_EXISTS, postId, change.username(), likedAt.toEpochMilli(), postId)
+                    : execute(jdbc, SqlStatement.DELETE_LIKE, postId, change.username());
+            if (rows > 0) {
+                return LikeOutcome.CHANGED;
+            }
+            return postExists(jdbc, postId) ? LikeOutcome.UNCHANGED : LikeOutcome.POST_NOT_FOUND;
+        }).toList());
+    }
+
+    /**
+     * Hands every like and comment made after {@code since} to {@code sink}, in no particular
+     * order. Reads both tables in full, so it is meant for startup rather than requests.
+     */
+    public void forEachActivitySince(Instant since, Consumer<Activity> sink) {
+        RowMapper<Activity> mapper = activityRowMapper();
+        long after = since.toEpochMilli();
+        reads.stream(() -> timers.get(SqlStatement.FIND_ACTIVITY_SINCE).record(() -> readJdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(SqlStatement.FIND_ACTIVITY_SINCE.sql());
+                    statement.setFetchSize(STREAM_FETCH_SIZE);
+                    statement.setLong(1, after);
+                    statement.setLong(2, after);
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> sink.accept(mapper.mapRow(rs, rs.getRow()))
+        )));
+    }
+
+    public List<Activity> findPostActivitySince(UUID postId, Instant since) {
+        byte[] key = bytes(postId);
+        long after = since.toEpochMilli();
+        return query(SqlStatement.FIND_POST_ACTIVITY_SINCE, activityRowMapper(), key, after, key, after);
+    }
+
+    public List<UUID> findPostIdsWithCounterDrift() {
+        return query(SqlStatement.FIND_POST_IDS_WITH_COUNTER_DRIFT, (rs, rowNum) -> uuid(rs, "id"));
+    }
+
+    public boolean repairCounters(UUID postId) {
+        return update(SqlStatement.REPAIR_COUNTERS, bytes(postId)) > 0;
+    }
+
+    private <T> List<T> query(SqlStatement statement, RowMapper<T> rowMapper, Object... args) {
+        return reads.call(() -> timers.get(statement).record(() -> readJdbcTemplate.query(statement.sql(), rowMapper, args)));
+    }
+
+    private boolean exists(SqlStatement statement, Object... args) {
+        Integer count = reads.call(() -> timers.get(statement).record(
+                () -> readJdbcTemplate.queryForObject(statement.sql(), Integer.class, args)
+        ));
         return count != null && count > 0;
     }
 
-    public void insertLike(String postId, String username) {
-        jdbcTemplate.update(
-                "INSERT INTO likes (postId, username) VALUES (?, ?)",
-                postId, username
-        );
+    private int update(SqlStatement statement, Object... args) {
+        return writes.execute(jdbc -> execute(jdbc, statement, args));
     }
 
-    public void deleteLike(String postId, String username) {
-        jdbcTemplate.update(
-                "DELETE FROM likes WHERE postId=? AND username=?",
-                postId, username
+    private int execute(JdbcTemplate jdbc, SqlStatement statement, Object... args) {
+        return timers.get(statement).record(() -> jdbc.update(statement.sql(), args));
+    }
+
+    private boolean postExists(JdbcTemplate jdbc, byte[] postId) {
+        Integer posts = timers.get(SqlStatement.POST_EXISTS).record(
+                () -> jdbc.queryForObject(SqlStatement.POST_EXISTS.sql(), Integer.class, postId)
         );
+        return posts != null && posts > 0;
     }
 
-    private RowMapper<PostData> postRowMapper() {
-        return (rs, rowNum) -> new PostData(
-                rs.getString("id"),
+    /**
+     * Runs a write whose only foreign key points at posts, returning {@code postMissing} instead
+     * when SQLite rejects it for naming a post that doesn't exist. SQLite undoes just the failed
+     * statement, so the surrounding transaction carries on.
+     */
+    private static <T> T unlessPostMissing(Supplier<T> write, T postMissing) {
+        try {
+            return write.get();
+        } catch (DataAccessException ex) {
+            if (ex.getMostSpecificCause() instanceof SQLiteException sqlite
+                    && sqlite.getResultCode() == SQLiteErrorCode.SQLITE_CONSTRAINT_FOREIGNKEY) {
+                return postMissing;
+            }
+            throw ex;
+        }
+    }
+
+    private RowMapper<Post> postRowMapper() {
+        return (rs, rowNum) -> new Post(
+                uuid(rs, "id"),
                 rs.getString("username"),
                 rs.getString("content"),
-                rs.getString("createdAt"),
-                rs.getString("updatedAt")
+                instant(rs, "createdAt"),
+                instant(rs, "updatedAt"),
+                rs.getInt("likeCount"),
+                rs.getInt("commentCount")
         );
     }
 
     private RowMapper<CommentData> commentRowMapper() {
         return (rs, rowNum) -> new CommentData(
-                rs.getString("id"),
-                rs.getString("postId"),
+                uuid(rs, "id"),
+                uuid(rs, "postId"),
                 rs.getString("username"),
                 rs.getString("content"),
-                rs.getString("createdAt"),
-                rs.getString("updatedAt")
+                instant(rs, "createdAt"),
+                instant(rs, "updatedAt")
         );
     }
 
-    public record PostData(String id, String username, String content, String createdAt, String updatedAt) {
+    private RowMapper<Activity> activityRowMapper() {
+        return (rs, rowNum) -> new Activity(uuid(rs, "postId"), instant(rs, "createdAt"), rs.getBoolean("comment"));
+    }
+
+    private static String jsonIds(List<UUID> ids) {
+        List<String> hex = ids.stream().map(id -> HexFormat.of().formatHex(bytes(id))).toList();
+        return JSON.writeValueAsString(hex);
+    }
+
+    private static Instant instant(ResultSet rs, String column) throws SQLException {
+        return Instant.ofEpochMilli(rs.getLong(column));
+    }
+
+    private static UUID uuid(ResultSet rs, String column) throws SQLException {
+        ByteBuffer bytes = ByteBuffer.wrap(rs.getBytes(column));
+        return new UUID(bytes.getLong(), bytes.getLong());
+    }
+
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    public record SearchHit(Post post, double rank) {
+    }
+
+    public record Activity(UUID postId, Instant at, boolean comment) {
+    }
+
+    public record LikeData(UUID postId, String username) {
+    }
+
+    public record NewLike(UUID postId, String username, Instant likedAt) {
+    }
+
+    public record LikeChange(UUID postId, String username, boolean liked) {
+    }
+
+    public record LikeState(boolean postExists, boolean liked) {
+    }
+
+    public enum LikeOutcome {
+        CHANGED,
+        UNCHANGED,
+        POST_NOT_FOUND
     }
 
-    public record CommentData(String id, String postId, String username, String content, String createdAt, String updatedAt) {
+    public record CommentData(UUID id, UUID postId, String username, String content, Instant createdAt, Instant updatedAt) {
     }
 }
@@ -0,0 +1,121 @@
+package com.contoso.socialapp.repository;
+
+/**
+ * Every statement {@link SocialAppRepository} sends to SQLite. Keeping them in one place lets
+ * the query-plan tests check each of them against the migrated schema.
+ */
+enum SqlStatement {
+    FIND_ALL_POSTS(Sql.POST_SELECT + "ORDER BY createdAt DESC, id DESC"),
+    FIND_POSTS_FIRST_PAGE(Sql.POST_SELECT + "ORDER BY createdAt DESC, id DESC LIMIT ?"),
+    FIND_POSTS_AFTER(Sql.POST_SELECT + "WHERE (createdAt, id) < (?, ?) ORDER BY createdAt DESC, id DESC LIMIT ?"),
+    FIND_POST_BY_ID(Sql.POST_SELECT + "WHERE id=?"),
+    FIND_POSTS_BY_IDS(Sql.POST_SELECT + "WHERE id IN (SELECT unhex(value) FROM json_each(?))"),
+    POST_EXISTS("SELECT COUNT(*) FROM posts WHERE id=?"),
+    INSERT_POST("INSERT INTO posts (id, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?)"),
+    UPDATE_POST("UPDATE posts SET username=?, content=?, updatedAt=? WHERE id=?"),
+    DELETE_POST("DELETE FROM posts WHERE id=?"),
+
+    FIND_COMMENTS_FIRST_PAGE(Sql.COMMENT_SELECT + "WHERE postId=? ORDER BY createdAt ASC, id ASC LIMIT ?"),
+    FIND_COMMENTS_AFTER(Sql.COMMENT_SELECT +
+            "WHERE postId=? AND (createdAt, id) > (?, ?) ORDER BY createdAt ASC, id ASC LIMIT ?"),
+    FIND_COMMENT_BY_ID(Sql.COMMENT_SELECT + "WHERE id=? AND postId=?"),
+    COMMENT_EXISTS("SELECT COUNT(*) FROM comments WHERE id=? AND postId=?"),
+    INSERT_COMMENT("INSERT INTO comments (id, postId, username, content, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?, ?)"),
+    UPDATE_COMMENT("UPDATE comments SET username=?, content=?, updatedAt=? WHERE id=? AND postId=?"),
+    DELETE_COMMENT("DELETE FROM comments WHERE id=? AND postId=?"),
+
+    FIND_LIKED_POST_IDS("SELECT postId FROM likes " +
+            "WHERE postId IN (SELECT unhex(value) FROM json_each(?)) AND username=?"),
+    LIKE_EXISTS("SELECT COUNT(*) FROM likes WHERE postId=? AND username=?"),
+    FIND_LIKE_STATES("SELECT EXISTS (SELECT 1 FROM posts WHERE id = unhex(item.value->>0)) AS postExists, " +
+            "EXISTS (SELECT 1 FROM likes WHERE postId = unhex(item.value->>0) AND username = item.value->>1) AS liked " +
+            "FROM json_each(?) AS item"),
+    INSERT_LIKE("INSERT INTO likes (postId, username, createdAt) VALUES (?, ?, ?) ON CONFLICT DO NOTHING"),
+    INSERT_LIKE_IF_POST_EXISTS("INSERT INTO likes (postId, username, createdAt) " +
+            "SELECT ?, ?, ? WHERE EXISTS (SELECT 1 FROM posts WHERE id=?) ON CONFLICT DO NOTHING"),
+    DELETE_LIKE("DELETE FROM likes WHERE postId=? AND username=?"),
+
+    SEARCH_POSTS_FIRST_PAGE(Sql.SEARCH_SELECT + "ORDER BY matches.rank, posts.id LIMIT ?", Kind.RANKED),
+    SEARCH_POSTS_AFTER(Sql.SEARCH_SELECT +
+            "WHERE (matches.rank, posts.id) > (?, ?) ORDER BY matches.rank, posts.id LIMIT ?", Kind.RANKED),
+
+    FIND_ACTIVITY_SINCE("SELECT postId, createdAt, 0 AS comment FROM likes WHERE createdAt > ? " +
+            "UNION ALL SELECT postId, createdAt, 1 FROM comments WHERE createdAt > ?", Kind.BACKGROUND),
+    FIND_POST_ACTIVITY_SINCE("SELECT postId, createdAt, 0 AS comment FROM likes WHERE postId=? AND createdAt > ? " +
+            "UNION ALL SELECT postId, createdAt, 1 FROM comments WHERE postId=? AND createdAt > ?"),
+
+    FIND_POST_IDS_WITH_COUNTER_DRIFT("SELECT id FROM posts WHERE " + Sql.COUNTER_DRIFT_CONDITION, Kind.BACKGROUND),
+    REPAIR_COUNTERS("UPDATE posts SET " +
+            "likeCount = (SELECT COUNT(*) FROM likes WHERE likes.postId = posts.id), " +
+            "commentCount = (SELECT COUNT(*) FROM comments WHERE comments.postId = posts.id) " +
+            "WHERE id=? AND (" + Sql.COUNTER_DRIFT_CONDITION + ")");
+
+    private final String sql;
+    private final Kind kind;
+
+    SqlStatement(String sql) {
+        this(sql, Kind.INDEXED);
+    }
+
+    SqlStatement(String sql, Kind kind) {
+        this.sql = sql;
+        this.kind = kind;
+    }
+
+    String sql() {
+        return sql;
+    }
+
+    /**
+     * Maintenance statements that read a whole table on purpose and never run on a request path.
+     */
+    boolean isBackground() {
+        return kind == Kind.BACKGROUND;
+    }
+
+    /**
+     * Relevance-ordered statements. Their order only exists once every match has been scored, so
+     * they sort into a temporary b-tree; the full-text index still bounds how many rows get there.
+     */
+    boolean isRanked() {
+        return kind == Kind.RANKED;
+    }
+
+    private enum Kind {
+        INDEXED,
+        RANKED,
+        BACKGROUND
+    }
+
+    private static final class Sql {
+        static final String POST_SELECT =
+                "SELECT id, username, content, createdAt, updatedAt, likeCount, commentCount FROM posts ";
+        static final String COMMENT_SELECT =
+                "SELECT id, postId, username, content, createdAt, updatedAt FROM comments ";
+        /**
+         * Posts whose own content or any of whose comments match, each ranked by its best bm25
+         * score. bm25 is negative and lower is better, so ascending order puts the best first.
+         *
+         * <p>Scoring costs far more than finding matches, and a common word matches most of the
+         * table, so only the newest {@value #SEARCH_CANDIDATES} matching posts and comments are
+         * scored. FTS5 walks its matches in rowid order without scoring them, so the cap holds
+         * the cost of any query to that many scores; searches with fewer matches are exact.
+         */
+        static final int SEARCH_CANDIDATES = 10_000;
+        static final String SEARCH_SELECT =
+                "SELECT posts.id, username, content, createdAt, updatedAt, likeCount, commentCount, matches.rank " +
+                        "FROM (SELECT postId, MIN(rank) AS rank FROM (" +
+                        "SELECT * FROM (SELECT posts.id AS postId, bm25(posts_fts) AS rank FROM posts_fts " +
+                        "JOIN posts ON posts.seq = posts_fts.rowid WHERE posts_fts MATCH ? " +
+                        "ORDER BY posts_fts.rowid DESC LIMIT " + SEARCH_CANDIDATES + ") " +
+                        "UNION ALL " +
+                        "SELECT * FROM (SELECT comments.postId, bm25(comments_fts) FROM comments_fts " +
+                        "JOIN comments ON comments.seq = comments_fts.rowid WHERE comments_fts MATCH ? " +
+                        "ORDER BY comments_fts.rowid DESC LIMIT " + SEARCH_CANDIDATES + ")" +
+                        ") GROUP BY postId) AS matches " +
+                        "JOIN posts ON posts.id = matches.postId ";
+        static final String COUNTER_DRIFT_CONDITION =
+                "likeCount <> (SELECT COUNT(*) FROM likes WHERE likes.postId = posts.id) " +
+                        "OR commentCount <> (SELECT COUNT(*) FROM comments WHERE comments.postId = posts.id)";
+    }
+}
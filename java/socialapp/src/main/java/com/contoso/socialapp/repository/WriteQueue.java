@@ -0,0 +1,206 @@
+package com.contoso.socialapp.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+@Component
+public class WriteQueue {
+    private static final Logger log = LoggerFactory.getLogger(WriteQueue.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<PendingWrite<?>> queue;
+    private final int maxBatchSize;
+    private final long timeoutNanos;
+    private final DistributionSummary batchSize;
+    private final Timer commitLatency;
+    private final Timer queueWait;
+    private final DatabaseLatency latency;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public WriteQueue(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            DatabaseLatency latency,
+            @Value("${socialapp.write-queue.capacity:1024}") int capacity,
+            @Value("${socialapp.write-queue.max-batch-size:64}") int maxBatchSize,
+            @Value("${socialapp.write-queue.timeout:PT30S}") Duration timeout
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutNanos = timeout.toNanos();
+        Gauge.builder("socialapp.write.queue.depth", queue, BlockingQueue::size)
+                .description("Writes waiting for the writer thread")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("socialapp.write.batch.size")
+                .description("Writes committed together in one transaction")
+                .register(meterRegistry);
+        this.commitLatency = Timer.builder("socialapp.write.commit")
+                .description("Time to execute and commit one batch")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("socialapp.write.queue.wait")
+                .description("Time a write spent queued before its batch started")
+                .register(meterRegistry);
+        this.latency = latency;
+        this.writer = Thread.ofPlatform().name("sqlite-writer").daemon().start(this::run);
+    }
+
+    /**
+     * Waits at most {@code socialapp.write-queue.timeout} for the write to commit. A write that
+     * times out while still queued is withdrawn; one that times out after its batch started may
+     * still be committed.
+     */
+    public <T> T execute(Function<JdbcTemplate, T> write) {
+        long started = System.nanoTime();
+        try {
+            PendingWrite<T> pending = enqueue(write);
+            try {
+                return pending.result().get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                if (queue.remove(pending)) {
+                    throw new TransientDataAccessResourceException("Timed out waiting for the write queue", ex);
+                }
+                throw new TransientDataAccessResourceException("Timed out waiting for a write to commit", ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new TransientDataAccessResourceException("Interrupted while waiting for a write", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (ex.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(ex.getCause());
+            }
+        } finally {
+            latency.recordWrite(System.nanoTime() - started);
+        }
+    }
+
+    private <T> PendingWrite<T> enqueue(Function<JdbcTemplate, T> write) {
+        if (!running) {
+            throw new IllegalStateException("Write queue is shut down");
+        }
+        PendingWrite<T> pending = new PendingWrite<>(write, new CompletableFuture<>(), System.nanoTime());
+        try {
+            queue.put(pending);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a write", ex);
+        }
+        // Shut down after the check above: either the writer still takes this write, or it has
+        // already exited and the write is withdrawn here.
+        if (!running && queue.remove(pending)) {
+            throw new IllegalStateException("Write queue is shut down");
+        }
+        return pending;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void run() {
+        List<PendingWrite<?>> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    PendingWrite<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    commit(batch);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Throwable ex) {
+                    log.error("Write batch failed", ex);
+                    batch.forEach(pending -> pending.result().completeExceptionally(ex));
+                } finally {
+                    batch.clear();
+                }
+            }
+        } finally {
+            IllegalStateException stopped = new IllegalStateException("Write queue is shut down");
+            queue.drainTo(batch);
+            batch.forEach(pending -> pending.result().completeExceptionally(stopped));
+        }
+    }
+
+    private void commit(List<PendingWrite<?>> batch) {
+        long started = System.nanoTime();
+        for (PendingWrite<?> pending : batch) {
+            queueWait.record(started - pending.queuedAt(), TimeUnit.NANOSECONDS);
+        }
+        List<Object> results = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PendingWrite<?> pending : batch) {
+                    Object savepoint = status.createSavepoint();
+                    try {
+                        results.add(pending.write().apply(jdbcTemplate));
+                        status.releaseSavepoint(savepoint);
+                    } catch (RuntimeException ex) {
+                        status.rollbackToSavepoint(savepoint);
+                        results.add(new Failure(ex));
+                    }
+                }
+            });
+        } catch (Throwable ex) {
+            // An Error from one write rolls back the whole transaction, so it fails every write in it.
+            batch.forEach(pending -> pending.result().completeExceptionally(ex));
+            return;
+        } finally {
+            commitLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.size());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private record Failure(RuntimeException cause) {
+    }
+
+    private record PendingWrite<T>(Function<JdbcTemplate, T> write, CompletableFuture<T> result, long queuedAt) {
+        @SuppressWarnings("unchecked")
+        void complete(Object outcome) {
+            if (outcome instanceof Failure failure) {
+                result.completeExceptionally(failure.cause());
+            } else {
+                result.complete((T) outcome);
+            }
+        }
+    }
+}
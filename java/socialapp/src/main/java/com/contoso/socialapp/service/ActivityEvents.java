@@ -0,0 +1,128 @@
+package com.contoso.socialapp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The most recent posts, comments and likes, in the order they were written, for the activity
+ * stream. Events go into a fixed-size ring and are numbered from one; each subscriber keeps its
+ * own position and reads at its own pace. A subscriber that falls a whole ring behind finds its
+ * next event overwritten and has to start over, so a slow client costs nothing beyond the ring.
+ *
+ * <p>Each event is serialized once, when it is published, rather than once per subscriber.
+ * Numbers restart when the process does, so event ids carry the startup time as well.
+ */
+@Component
+public class ActivityEvents {
+    public static final String POST = "post";
+    public static final String COMMENT = "comment";
+    public static final String LIKE = "like";
+
+    private final ObjectMapper objectMapper;
+    private final String epoch;
+    private final AtomicReferenceArray<Event> ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private volatile long latest;
+
+    public ActivityEvents(ObjectMapper objectMapper, @Value("${socialapp.stream.buffer-size:1024}") int bufferSize) {
+        this.objectMapper = objectMapper;
+        this.epoch = Long.toString(System.currentTimeMillis(), 36);
+        this.ring = new AtomicReferenceArray<>(bufferSize);
+    }
+
+    /**
+     * Called once the write is committed, so a subscriber that reacts by fetching the post finds it.
+     */
+    public void publish(String type, Object payload) {
+        String data = objectMapper.writeValueAsString(payload);
+        lock.lock();
+        try {
+            long sequence = latest + 1;
+            ring.set(slot(sequence), new Event(sequence, id(sequence), type, data));
+            latest = sequence;
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The sequence number of the newest event, or zero before the first.
+     */
+    public long latest() {
+        return latest;
+    }
+
+    /**
+     * The event numbered {@code sequence}, or null once it has been overwritten. Only valid for a
+     * sequence no greater than {@link #latest()}.
+     */
+    public Event get(long sequence) {
+        Event event = ring.get(slot(sequence));
+        return event != null && event.sequence() == sequence ? event : null;
+    }
+
+    /**
+     * Waits until an event after {@code sequence} is published, or the timeout passes, and returns
+     * {@link #latest()}.
+     */
+    public long await(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        if (latest > sequence) {
+            return latest;
+        }
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (latest <= sequence && remaining > 0) {
+                remaining = published.awaitNanos(remaining);
+            }
+            return latest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The sequence number a client that last saw {@code eventId} should continue after, or -1 when
+     * the id is malformed, from before a restart, or too old for the events since to still be in
+     * the ring.
+     */
+    public long resumeAfter(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !epoch.equals(eventId.substring(0, separator))) {
+            return -1;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(eventId.substring(separator + 1), 36);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+        long current = latest;
+        if (sequence < 0 || sequence > current || current - sequence > ring.length()) {
+            return -1;
+        }
+        return sequence;
+    }
+
+    /**
+     * The id a client should send back to continue from {@code sequence}.
+     */
+    public String id(long sequence) {
+        return epoch + "-" + Long.toString(sequence, 36);
+    }
+
+    private int slot(long sequence) {
+        return (int) Math.floorMod(sequence, (long) ring.length());
+    }
+
+    public record Event(long sequence, String id, String type, String data) {
+    }
+}
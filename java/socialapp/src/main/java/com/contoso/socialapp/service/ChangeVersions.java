@@ -0,0 +1,78 @@
+package com.contoso.socialapp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory change counters behind the API's ETags and Last-Modified headers. Every write bumps
+ * the feed version and the version of the post it touched, so a conditional GET can be answered
+ * before any query runs. Posts share a fixed number of stripes rather than getting an entry each:
+ * a write to one post also changes the ETag of the others in its stripe, which costs those
+ * clients one extra download but keeps memory flat and deleted posts correct.
+ *
+ * <p>Versions restart when the process does, so each ETag carries the startup time as well.
+ */
+@Component
+public class ChangeVersions {
+    private final String epoch;
+    private final AtomicLong counter = new AtomicLong();
+    private final AtomicReference<Version> feed;
+    private final AtomicReferenceArray<Version> posts;
+
+    public ChangeVersions(@Value("${socialapp.etag.stripes:4096}") int stripes) {
+        long startedAt = System.currentTimeMillis();
+        Version initial = new Version(0, startedAt);
+        this.epoch = Long.toString(startedAt, 36);
+        this.feed = new AtomicReference<>(initial);
+        this.posts = new AtomicReferenceArray<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            posts.set(i, initial);
+        }
+    }
+
+    /**
+     * Read before running the query the response is built from; a write that lands in between
+     * then only makes the next request download again instead of pinning stale data to a new tag.
+     */
+    public Version feed() {
+        return feed.get();
+    }
+
+    public Version post(UUID postId) {
+        return posts.get(stripe(postId));
+    }
+
+    public void postChanged(UUID postId) {
+        Version next = new Version(counter.incrementAndGet(), System.currentTimeMillis());
+        posts.accumulateAndGet(stripe(postId), next, ChangeVersions::newer);
+        feed.accumulateAndGet(next, ChangeVersions::newer);
+    }
+
+    /**
+     * For changes to what the feed endpoints return that touch no post, such as the trending
+     * ranking reordering on its own.
+     */
+    public void feedChanged() {
+        feed.accumulateAndGet(new Version(counter.incrementAndGet(), System.currentTimeMillis()), ChangeVersions::newer);
+    }
+
+    public String etag(Version version) {
+        return "\"" + epoch + "-" + Long.toString(version.number(), 36) + "\"";
+    }
+
+    private int stripe(UUID postId) {
+        return Math.floorMod(postId.hashCode(), posts.length());
+    }
+
+    private static Version newer(Version current, Version candidate) {
+        return candidate.number() > current.number() ? candidate : current;
+    }
+
+    public record Version(long number, long modifiedAt) {
+    }
+}
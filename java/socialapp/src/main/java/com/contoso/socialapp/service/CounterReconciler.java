@@ -0,0 +1,55 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.repository.SocialAppRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+@Component
+public class CounterReconciler {
+    private static final Logger log = LoggerFactory.getLogger(CounterReconciler.class);
+
+    private final SocialAppRepository repository;
+    private final PostCache cache;
+    private final ChangeVersions versions;
+    private final Counter repairedCounter;
+
+    public CounterReconciler(
+            SocialAppRepository repository,
+            PostCache cache,
+            ChangeVersions versions,
+            MeterRegistry meterRegistry
+    ) {
+        this.repository = repository;
+        this.cache = cache;
+        this.versions = versions;
+        this.repairedCounter = Counter.builder("socialapp.counters.repaired")
+                .description("Posts whose likeCount or commentCount drifted and were recounted")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${socialapp.counters.reconcile-interval:PT5M}",
+            fixedDelayString = "${socialapp.counters.reconcile-interval:PT5M}"
+    )
+    public int reconcile() {
+        int repaired = 0;
+        for (UUID postId : repository.findPostIdsWithCounterDrift()) {
+            if (repository.repairCounters(postId)) {
+                cache.invalidatePost(postId);
+                versions.postChanged(postId);
+                repaired++;
+            }
+        }
+        if (repaired > 0) {
+            repairedCounter.increment(repaired);
+            log.warn("Repaired like/comment counters on {} posts", repaired);
+        }
+        return repaired;
+    }
+}
@@ -0,0 +1,477 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.exception.BadRequestException;
+import com.contoso.socialapp.model.LikeEvent;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeChange;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeData;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeOutcome;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeState;
+import com.contoso.socialapp.repository.SocialAppRepository.NewLike;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+@Component
+public class LikeWriteBuffer {
+    private static final Logger log = LoggerFactory.getLogger(LikeWriteBuffer.class);
+
+    private final SocialAppRepository repository;
+    private final PostCache cache;
+    private final TrendingIndex trending;
+    private final ActivityEvents events;
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final long maxLagNanos;
+    private final Stripe[] stripes;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * Odd while a flush is committing, until the counts it wrote have left the pending deltas and
+     * the post cache.
+     */
+    private final AtomicLong commits = new AtomicLong();
+    private ScheduledExecutorService flusher;
+
+    public LikeWriteBuffer(
+            SocialAppRepository repository,
+            PostCache cache,
+            TrendingIndex trending,
+            ActivityEvents events,
+            @Value("${socialapp.likes.write-behind.enabled:false}") boolean enabled,
+            @Value("${socialapp.likes.write-behind.flush-interval:PT0.1S}") Duration flushInterval,
+            @Value("${socialapp.likes.write-behind.max-lag:PT1S}") Duration maxLag,
+            @Value("${socialapp.likes.write-behind.stripes:16}") int stripeCount
+    ) {
+        this.repository = repository;
+        this.cache = cache;
+        this.trending = trending;
+        this.events = events;
+        this.enabled = enabled;
+        this.flushInterval = flushInterval;
+        this.maxLagNanos = maxLag.toNanos();
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("like-write-behind").daemon().factory());
+        long intervalNanos = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void drain() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffers a like made at {@code likedAt}, the time it is stored and scored with once flushed.
+     */
+    public void like(UUID postId, String username, Instant likedAt) {
+        if (!accept(postId, username, true, likedAt, null, -1)) {
+            throw new BadRequestException("Already liked");
+        }
+    }
+
+    public void unlike(UUID postId, String username) {
+        accept(postId, username, false, null, null, -1);
+    }
+
+    /**
+     * Likes or unlikes for each change in turn and reports what happened to each, the way
+     * {@link SocialAppRepository#applyLikes} does. Which posts exist and which likes are stored is
+     * looked up for the whole batch in one query rather than twice per item.
+     */
+    public List<LikeOutcome> apply(List<LikeChange> changes, Instant likedAt) {
+        long[] lookedUpAsOf = new long[changes.size()];
+        for (int i = 0; i < changes.size(); i++) {
+            lookedUpAsOf[i] = stripeFor(changes.get(i).postId()).completedFlushes();
+        }
+        List<LikeState> states = repository.findLikeStates(
+                changes.stream().map(change -> new LikeData(change.postId(), change.username())).toList()
+        );
+        List<LikeOutcome> outcomes = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            LikeChange change = changes.get(i);
+            LikeState state = states.get(i);
+            if (!state.postExists()) {
+                outcomes.add(LikeOutcome.POST_NOT_FOUND);
+            } else if (accept(change.postId(), change.username(), change.liked(), likedAt, state.liked(), lookedUpAsOf[i])) {
+                outcomes.add(LikeOutcome.CHANGED);
+            } else {
+                outcomes.add(LikeOutcome.UNCHANGED);
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Runs {@code read}, which loads posts and passes them through {@link #withPendingLikes}, so
+     * that it counts each accepted like exactly once. A read that overlaps the commit of a flush
+     * cannot tell whether the rows it loaded already include that batch, so it waits for the flush
+     * to finish and runs again.
+     */
+    public <T> T read(Supplier<T> read) {
+        if (!enabled) {
+            return read.get();
+        }
+        while (true) {
+            long before = commits.get();
+            if ((before & 1) != 0) {
+                flushLock.lock();
+                flushLock.unlock();
+                continue;
+            }
+            T result = read.get();
+            if (commits.get() == before) {
+                return result;
+            }
+        }
+    }
+
+    public Post withPendingLikes(Post post) {
+        if (!enabled) {
+            return post;
+        }
+        int delta = stripeFor(post.id()).delta(post.id());
+        if (delta == 0) {
+            return post;
+        }
+        return new Post(
+                post.id(),
+                post.username(),
+                post.content(),
+                post.createdAt(),
+                post.updatedAt(),
+                post.likeCount() + delta,
+                post.commentCount(),
+                post.likedByViewer()
+        );
+    }
+
+    public List<Post> withPendingLikes(List<Post> posts) {
+        if (!enabled) {
+            return posts;
+        }
+        return posts.stream().map(this::withPendingLikes).toList();
+    }
+
+    /**
+     * The like state a viewer is waiting to have written for a post, or null when the database
+     * already has the final word.
+     */
+    public Boolean pendingLike(UUID postId, String username) {
+        if (!enabled) {
+            return null;
+        }
+        LikeData key = new LikeData(postId, username);
+        Stripe stripe = stripeFor(postId);
+        stripe.lock.lock();
+        try {
+            PendingLike pending = stripe.pending.get(key);
+            if (pending == null) {
+                pending = stripe.inFlight.get(key);
+            }
+            return pending == null ? null : pending.liked();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void discard(UUID postId) {
+        Stripe stripe = stripeFor(postId);
+        stripe.lock.lock();
+        try {
+            stripe.pending.keySet().removeIf(key -> key.postId().equals(postId));
+            stripe.deltas.remove(postId);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Map<LikeData, PendingLike>> batches = new ArrayList<>(stripes.length);
+            List<NewLike> added = new ArrayList<>();
+            List<LikeData> removed = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                Map<LikeData, PendingLike> batch = stripe.takePending();
+                batches.add(batch);
+                batch.forEach((key, pending) -> {
+                    if (pending.liked()) {
+                        added.add(new NewLike(key.postId(), key.username(), pending.likedAt()));
+                    } else {
+                        removed.add(key);
+                    }
+                });
+            }
+            if (added.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+            Set<UUID> touchedPosts = new HashSet<>();
+            batches.forEach(batch -> batch.keySet().forEach(key -> touchedPosts.add(key.postId())));
+            int[] inserted;
+            commits.incrementAndGet();
+            try {
+                try {
+                    inserted = repository.applyLikeChanges(added, removed);
+                } catch (RuntimeException | Error ex) {
+                    for (int i = 0; i < stripes.length; i++) {
+                        stripes[i].restore(batches.get(i));
+                    }
+                    throw ex;
+                }
+                touchedPosts.forEach(cache::invalidatePost);
+                for (int i = 0; i < stripes.length; i++) {
+                    if (!batches.get(i).isEmpty()) {
+                        stripes[i].completeInFlight();
+                    }
+                }
+            } finally {
+                commits.incrementAndGet();
+            }
+            // Unlikes can only be scored once they have reached the database.
+            removed.stream().map(LikeData::postId).distinct().forEach(trending::refresh);
+            // Likes are scored and announced only now, and only those that were stored. A like
+            // toggled while buffered then counts once at most, and a subscriber never hears of one
+            // that a deleted post or a failed flush kept out of the database.
+            for (int i = 0; i < added.size(); i++) {
+                if (inserted[i] > 0) {
+                    NewLike like = added.get(i);
+                    trending.liked(like.postId(), like.likedAt());
+                    events.publish(ActivityEvents.LIKE, new LikeEvent(like.postId(), like.username(), like.likedAt()));
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.warn("Like write-behind flush failed, will retry", ex);
+        }
+    }
+
+    /**
+     * Whether the like was stored in the database is looked up outside the stripe lock, so one slow
+     * read holds up only its own caller. A flush of the stripe that completes meanwhile may have
+     * changed the answer, in which case it is looked up again. A caller that already looked it up
+     * passes the answer as {@code stored}, along with the stripe's flush count from before it did.
+     */
+    private boolean accept(UUID postId, String username, boolean liked, Instant likedAt, Boolean stored, long storedAsOf) {
+        LikeData key = new LikeData(postId, username);
+        Stripe stripe = stripeFor(postId);
+        while (true) {
+            Boolean changed = null;
+            boolean overdue = false;
+            long flushes;
+            stripe.lock.lock();
+            try {
+                flushes = stripe.completedFlushes;
+                Boolean persisted = stripe.persisted(key);
+                if (persisted == null && stored != null && storedAsOf == flushes) {
+                    persisted = stored;
+                }
+                if (persisted != null) {
+                    changed = stripe.accept(key, liked, likedAt, persisted);
+                    overdue = stripe.isOverdue(maxLagNanos);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+            if (changed != null) {
+                if (overdue) {
+                    flush();
+                }
+                return changed;
+            }
+            stored = repository.likeExists(postId, username);
+            storedAsOf = flushes;
+        }
+    }
+
+    private Stripe stripeFor(UUID postId) {
+        return stripes[Math.floorMod(postId.hashCode(), stripes.length)];
+    }
+
+    /**
+     * {@code likedAt} is when the user liked the post, null for an unlike. {@code acceptedNanos}
+     * is on the monotonic clock and only measures how long the entry has waited.
+     */
+    private record PendingLike(boolean liked, boolean persisted, Instant likedAt, long acceptedNanos) {
+        int delta() {
+            return liked ? 1 : -1;
+        }
+    }
+
+    /**
+     * The likes waiting to be written for a share of the posts, and what they add to each post's
+     * count. A flush moves both into {@code inFlight} and drops them once its commit has landed,
+     * so until then readers still add the batch being written.
+     */
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Map<LikeData, PendingLike> pending = new HashMap<>();
+        private Map<LikeData, PendingLike> inFlight = Map.of();
+        private Map<UUID, Integer> deltas = new HashMap<>();
+        private Map<UUID, Integer> inFlightDeltas = Map.of();
+        private long oldestAcceptedAt;
+        private long completedFlushes;
+
+        /**
+         * What the database holds, or will once the batch in flight commits, or null when only
+         * the database knows.
+         */
+        Boolean persisted(LikeData key) {
+            PendingLike pending = this.pending.get(key);
+            if (pending != null) {
+                return pending.persisted();
+            }
+            PendingLike inFlight = this.inFlight.get(key);
+            return inFlight == null ? null : inFlight.liked();
+        }
+
+        boolean accept(LikeData key, boolean liked, Instant likedAt, boolean persisted) {
+            PendingLike pending = this.pending.get(key);
+            boolean current = pending != null ? pending.liked() : persisted;
+            if (current == liked) {
+                return false;
+            }
+            if (liked == persisted) {
+                this.pending.remove(key);
+            } else {
+                put(key, new PendingLike(liked, persisted, likedAt, System.nanoTime()));
+            }
+            deltas.merge(key.postId(), liked ? 1 : -1, LikeWriteBuffer::sumOrNull);
+            return true;
+        }
+
+        long completedFlushes() {
+            lock.lock();
+            try {
+                return completedFlushes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int delta(UUID postId) {
+            lock.lock();
+            try {
+                return deltas.getOrDefault(postId, 0) + inFlightDeltas.getOrDefault(postId, 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(LikeData key, PendingLike like) {
+            if (pending.isEmpty()) {
+                oldestAcceptedAt = like.acceptedNanos();
+            }
+            pending.put(key, like);
+        }
+
+        Map<LikeData, PendingLike> takePending() {
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return Map.of();
+                }
+                Map<LikeData, PendingLike> batch = pending;
+                pending = new HashMap<>();
+                inFlight = batch;
+                inFlightDeltas = deltas;
+                deltas = new HashMap<>();
+                return batch;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void completeInFlight() {
+            lock.lock();
+            try {
+                inFlight = Map.of();
+                inFlightDeltas = Map.of();
+                completedFlushes++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void restore(Map<LikeData, PendingLike> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            lock.lock();
+            try {
+                batch.forEach((key, failed) -> {
+                    PendingLike newer = pending.get(key);
+                    if (newer == null) {
+                        put(key, failed);
+                    } else if (newer.liked() == failed.persisted()) {
+                        pending.remove(key);
+                    } else {
+                        put(key, new PendingLike(newer.liked(), failed.persisted(), newer.likedAt(), failed.acceptedNanos()));
+                    }
+                });
+                inFlightDeltas.forEach((postId, delta) -> deltas.merge(postId, delta, LikeWriteBuffer::sumOrNull));
+                inFlight = Map.of();
+                inFlightDeltas = Map.of();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isOverdue(long maxLagNanos) {
+            return !pending.isEmpty() && System.nanoTime() - oldestAcceptedAt > maxLagNanos;
+        }
+    }
+
+    private static Integer sumOrNull(int a, int b) {
+        return a + b == 0 ? null : a + b;
+    }
+}
@@ -0,0 +1,82 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.repository.SocialAppRepository.CommentData;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Component
+public class PostCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final SocialAppRepository repository;
+    private final Cache<UUID, Post> posts;
+    private final Cache<UUID, List<CommentData>> comments;
+
+    public PostCache(
+            SocialAppRepository repository,
+            MeterRegistry meterRegistry,
+            @Value("${socialapp.cache.posts.max-size:8MB}") DataSize postsMaxSize,
+            @Value("${socialapp.cache.comments.max-size:32MB}") DataSize commentsMaxSize,
+            @Value("${socialapp.cache.ttl:PT30S}") Duration ttl
+    ) {
+        this.repository = repository;
+        this.posts = Caffeine.newBuilder()
+                .maximumWeight(postsMaxSize.toBytes())
+                .<UUID, Post>weigher((postId, post) -> weigh(post))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.comments = Caffeine.newBuilder()
+                .maximumWeight(commentsMaxSize.toBytes())
+                .<UUID, List<CommentData>>weigher((postId, rows) -> weigh(rows))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, posts, "posts");
+        CaffeineCacheMetrics.monitor(meterRegistry, comments, "comments");
+    }
+
+    public Optional<Post> findPostById(UUID postId) {
+        return Optional.ofNullable(posts.get(postId, id -> repository.findPostById(id).orElse(null)));
+    }
+
+    /**
+     * The oldest comments on a post: enough for the largest first page, plus one to tell whether
+     * there is a next page.
+     */
+    public List<CommentData> findFirstComments(UUID postId) {
+        return comments.get(postId, id -> repository.findCommentsPage(id, null, SocialAppService.MAX_PAGE_SIZE + 1));
+    }
+
+    public void invalidatePost(UUID postId) {
+        posts.invalidate(postId);
+    }
+
+    public void invalidateComments(UUID postId) {
+        comments.invalidate(postId);
+    }
+
+    private static int weigh(Post post) {
+        return ENTRY_OVERHEAD_BYTES + 2 * (post.username().length() + post.content().length());
+    }
+
+    private static int weigh(List<CommentData> rows) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (CommentData row : rows) {
+            bytes += ENTRY_OVERHEAD_BYTES + 2L * (row.username().length() + row.content().length());
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
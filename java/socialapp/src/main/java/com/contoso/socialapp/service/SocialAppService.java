@@ -2,113 +2,275 @@ package com.contoso.socialapp.service;
 
 import com.contoso.socialapp.exception.BadRequestException;
 import com.contoso.socialapp.exception.NotFoundException;
+import com.contoso.socialapp.model.BatchResult;
 import com.contoso.socialapp.model.Comment;
 import com.contoso.socialapp.model.CommentCreateRequest;
 import com.contoso.socialapp.model.CommentUpdateRequest;
+import com.contoso.socialapp.model.LikeBatchItem;
+import com.contoso.socialapp.model.LikeEvent;
 import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Page;
+import com.contoso.socialapp.model.PageCursor;
 import com.contoso.socialapp.model.Post;
 import com.contoso.socialapp.model.PostCreateRequest;
 import com.contoso.socialapp.model.PostUpdateRequest;
+import com.contoso.socialapp.model.SearchCursor;
 import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeChange;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeOutcome;
+import com.contoso.socialapp.repository.SocialAppRepository.SearchHit;
+import io.micrometer.core.annotation.Timed;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
+@Timed(value = "socialapp.service", histogram = true)
 public class SocialAppService {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_QUERY_LENGTH = 200;
+    private static final int STREAM_CHUNK_SIZE = 256;
+
     private final SocialAppRepository repository;
+    private final PostCache cache;
+    private final LikeWriteBuffer likeBuffer;
+    private final ChangeVersions versions;
+    private final TrendingIndex trending;
+    private final ActivityEvents events;
+    private final Validator validator;
 
-    public SocialAppService(SocialAppRepository repository) {
+    public SocialAppService(
+            SocialAppRepository repository,
+            PostCache cache,
+            LikeWriteBuffer likeBuffer,
+            ChangeVersions versions,
+            TrendingIndex trending,
+            ActivityEvents events,
+            Validator validator
+    ) {
         this.repository = repository;
+        this.cache = cache;
+        this.likeBuffer = likeBuffer;
+        this.versions = versions;
+        this.trending = trending;
+        this.events = events;
+        this.validator = validator;
     }
 
-    public List<Post> listPosts() {
-        return repository.findAllPosts().stream()
-                .map(post -> new Post(
-                        post.id(),
-                        post.username(),
-                        post.content(),
-                        post.createdAt(),
-                        post.updatedAt(),
-                        repository.countLikes(post.id()),
-                        repository.countComments(post.id())
-                ))
-                .toList();
+    public Page<Post> listPosts(Integer limit, String cursor, String viewer) {
+        int pageSize = pageSize(limit);
+        PageCursor after = decodeCursor(cursor);
+        List<Post> posts = postsWithPendingLikes(() -> repository.findPostsPage(after, pageSize + 1));
+        Page<Post> page = page(posts, pageSize, post -> new PageCursor(post.createdAt(), post.id()).encode());
+        return new Page<>(withLikedByViewer(page.items(), viewer), page.nextCursor());
+    }
+
+    public Page<Post> searchPosts(String query, Integer limit, String cursor) {
+        String match = matchExpression(query);
+        int pageSize = pageSize(limit);
+        SearchCursor after = cursor == null ? null : SearchCursor.decode(cursor);
+        List<SearchHit> found = likeBuffer.read(() -> repository.searchPosts(match, after, pageSize + 1).stream()
+                .map(hit -> new SearchHit(likeBuffer.withPendingLikes(hit.post()), hit.rank()))
+                .toList());
+        Page<SearchHit> hits = page(found, pageSize, hit -> new SearchCursor(hit.rank(), hit.post().id()).encode());
+        return new Page<>(hits.items().stream().map(SearchHit::post).toList(), hits.nextCursor());
+    }
+
+    public List<Post> trendingPosts(Integer limit) {
+        List<UUID> postIds = trending.top(pageSize(limit));
+        if (postIds.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, Post> found = postsWithPendingLikes(() -> repository.findPostsByIds(postIds)).stream()
+                .collect(Collectors.toMap(Post::id, Function.identity()));
+        // A post deleted since it was ranked is simply left out.
+        return postIds.stream().map(found::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Hands every post to {@code sink}, newest first, reading the feed one keyset page at a time.
+     * Each page is its own short query, so while {@code sink} waits on a slow client no read permit,
+     * connection or WAL snapshot is held. Posts written during the walk show up only if they sort
+     * after the page being read.
+     */
+    public void streamPosts(Consumer<Post> sink) {
+        PageCursor after = null;
+        List<Post> chunk;
+        do {
+            PageCursor from = after;
+            chunk = postsWithPendingLikes(() -> repository.findPostsPage(from, STREAM_CHUNK_SIZE));
+            chunk.forEach(sink);
+            if (!chunk.isEmpty()) {
+                Post last = chunk.getLast();
+                after = new PageCursor(last.createdAt(), last.id());
+            }
+        } while (chunk.size() == STREAM_CHUNK_SIZE);
     }
 
     public Post createPost(PostCreateRequest request) {
-        String postId = UUID.randomUUID().toString();
-        String now = Instant.now().toString();
+        UUID postId = UuidV7.generate();
+        Instant now = now();
         repository.insertPost(postId, request.username(), request.content(), now, now);
-        return new Post(postId, request.username(), request.content(), now, now, 0, 0);
+        versions.postChanged(postId);
+        Post post = new Post(postId, request.username(), request.content(), now, now, 0, 0);
+        events.publish(ActivityEvents.POST, post);
+        return post;
+    }
+
+    public List<BatchResult<Post>> createPosts(List<PostCreateRequest> requests) {
+        checkBatchSize(requests.size());
+        List<BatchResult<Post>> results = new ArrayList<>(requests.size());
+        List<Post> posts = new ArrayList<>(requests.size());
+        Instant now = now();
+        for (PostCreateRequest request : requests) {
+            String error = validate(request);
+            if (error != null) {
+                results.add(new BatchResult<>(400, null, error));
+                continue;
+            }
+            Post post = new Post(UuidV7.generate(), request.username(), request.content(), now, now, 0, 0);
+            posts.add(post);
+            results.add(new BatchResult<>(201, post, null));
+        }
+        if (!posts.isEmpty()) {
+            repository.insertPosts(posts);
+            posts.forEach(post -> {
+                versions.postChanged(post.id());
+                events.publish(ActivityEvents.POST, post);
+            });
+        }
+        return results;
+    }
+
+    public List<BatchResult<Post>> getPosts(List<UUID> postIds) {
+        checkBatchSize(postIds.size());
+        List<UUID> distinct = List.copyOf(new LinkedHashSet<>(postIds));
+        Map<UUID, Post> found = postsWithPendingLikes(() -> repository.findPostsByIds(distinct)).stream()
+                .collect(Collectors.toMap(Post::id, Function.identity()));
+        return postIds.stream()
+                .map(postId -> found.containsKey(postId)
+                        ? new BatchResult<>(200, found.get(postId), null)
+                        : new BatchResult<Post>(404, null, "Post not found"))
+                .toList();
     }
 
-    public Post getPost(String postId) {
-        SocialAppRepository.PostData post = repository.findPostById(postId)
+    public Post getPost(UUID postId) {
+        return likeBuffer.read(() -> cache.findPostById(postId).map(likeBuffer::withPendingLikes))
                 .orElseThrow(() -> new NotFoundException("Post not found"));
-        return new Post(
-                post.id(),
-                post.username(),
-                post.content(),
-                post.createdAt(),
-                post.updatedAt(),
-                repository.countLikes(post.id()),
-                repository.countComments(post.id())
-        );
     }
 
-    public Post updatePost(String postId, PostUpdateRequest request) {
-        if (!repository.postExists(postId)) {
+    public Post getPost(UUID postId, String viewer) {
+        return withLikedByViewer(List.of(getPost(postId)), viewer).getFirst();
+    }
+
+    public Post updatePost(UUID postId, PostUpdateRequest request) {
+        Instant now = now();
+        if (!repository.updatePost(postId, request.username(), request.content(), now)) {
             throw new NotFoundException("Post not found");
         }
-        String now = Instant.now().toString();
-        repository.updatePost(postId, request.username(), request.content(), now);
-        SocialAppRepository.PostData post = repository.findPostById(postId)
+        cache.invalidatePost(postId);
+        versions.postChanged(postId);
+        return likeBuffer.read(() -> repository.findPostById(postId).map(likeBuffer::withPendingLikes))
                 .orElseThrow(() -> new NotFoundException("Post not found"));
-        return new Post(
-                post.id(),
-                post.username(),
-                post.content(),
-                post.createdAt(),
-                post.updatedAt(),
-                repository.countLikes(post.id()),
-                repository.countComments(post.id())
-        );
     }
 
-    public void deletePost(String postId) {
+    public void deletePost(UUID postId) {
         if (!repository.postExists(postId)) {
             throw new NotFoundException("Post not found");
         }
         repository.deletePost(postId);
+        likeBuffer.discard(postId);
+        trending.remove(postId);
+        cache.invalidatePost(postId);
+        cache.invalidateComments(postId);
+        versions.postChanged(postId);
     }
 
-    public List<Comment> listComments(String postId) {
-        return repository.findCommentsByPostId(postId).stream()
-                .map(comment -> new Comment(
-                        comment.id(),
-                        comment.postId(),
-                        comment.username(),
-                        comment.content(),
-                        comment.createdAt(),
-                        comment.updatedAt()
-                ))
+    /**
+     * The first page comes from the cache, which holds as many comments as the largest page
+     * needs; later pages are read from the cursor on.
+     */
+    public Page<Comment> listComments(UUID postId, Integer limit, String cursor) {
+        int pageSize = pageSize(limit);
+        PageCursor after = decodeCursor(cursor);
+        List<SocialAppRepository.CommentData> rows = after == null
+                ? cache.findFirstComments(postId)
+                : repository.findCommentsPage(postId, after, pageSize + 1);
+        List<Comment> comments = rows.stream()
+                .limit(pageSize + 1)
+                .map(this::toComment)
                 .toList();
+        return page(comments, pageSize, comment -> new PageCursor(comment.createdAt(), comment.id()).encode());
     }
 
-    public Comment createComment(String postId, CommentCreateRequest request) {
-        if (!repository.postExists(postId)) {
+    public Comment createComment(UUID postId, CommentCreateRequest request) {
+        UUID commentId = UuidV7.generate();
+        Instant now = now();
+        if (!repository.insertComment(commentId, postId, request.username(), request.content(), now, now)) {
             throw new NotFoundException("Post not found");
         }
-        String commentId = UUID.randomUUID().toString();
-        String now = Instant.now().toString();
-        repository.insertComment(commentId, postId, request.username(), request.content(), now, now);
-        return new Comment(commentId, postId, request.username(), request.content(), now, now);
+        cache.invalidatePost(postId);
+        cache.invalidateComments(postId);
+        trending.commented(postId, now);
+        versions.postChanged(postId);
+        Comment comment = new Comment(commentId, postId, request.username(), request.content(), now, now);
+        events.publish(ActivityEvents.COMMENT, comment);
+        return comment;
+    }
+
+    public List<BatchResult<Comment>> createComments(UUID postId, List<CommentCreateRequest> requests) {
+        checkBatchSize(requests.size());
+        List<BatchResult<Comment>> results = new ArrayList<>(requests.size());
+        List<SocialAppRepository.CommentData> comments = new ArrayList<>(requests.size());
+        Instant now = now();
+        for (CommentCreateRequest request : requests) {
+            String error = validate(request);
+            if (error != null) {
+                results.add(new BatchResult<>(400, null, error));
+                continue;
+            }
+            SocialAppRepository.CommentData comment = new SocialAppRepository.CommentData(
+                    UuidV7.generate(), postId, request.username(), request.content(), now, now
+            );
+            comments.add(comment);
+            results.add(new BatchResult<>(201, toComment(comment), null));
+        }
+        if (!comments.isEmpty()) {
+            if (!repository.insertComments(comments)) {
+                // Every comment in the batch is on the same post, so none of them were written.
+                results.replaceAll(result -> result.status() == 201
+                        ? new BatchResult<>(404, null, "Post not found")
+                        : result);
+                return results;
+            }
+            cache.invalidatePost(postId);
+            cache.invalidateComments(postId);
+            comments.forEach(comment -> trending.commented(postId, now));
+            versions.postChanged(postId);
+            comments.forEach(comment -> events.publish(ActivityEvents.COMMENT, toComment(comment)));
+        }
+        return results;
     }
 
-    public Comment getComment(String postId, String commentId) {
+    public Comment getComment(UUID postId, UUID commentId) {
         SocialAppRepository.CommentData comment = repository.findCommentById(postId, commentId)
                 .orElseThrow(() -> new NotFoundException("Comment not found"));
         return new Comment(
@@ -121,12 +283,14 @@ public class SocialAppService {
         );
     }
 
-    public Comment updateComment(String postId, String commentId, CommentUpdateRequest request) {
+    public Comment updateComment(UUID postId, UUID commentId, CommentUpdateRequest request) {
         if (!repository.commentExists(postId, commentId)) {
             throw new NotFoundException("Comment not found");
         }
-        String now = Instant.now().toString();
+        Instant now = now();
         repository.updateComment(postId, commentId, request.username(), request.content(), now);
+        cache.invalidateComments(postId);
+        versions.postChanged(postId);
         SocialAppRepository.CommentData comment = repository.findCommentById(postId, commentId)
                 .orElseThrow(() -> new NotFoundException("Comment not found"));
         return new Comment(
@@ -139,27 +303,236 @@ public class SocialAppService {
         );
     }
 
-    public void deleteComment(String postId, String commentId) {
+    public void deleteComment(UUID postId, UUID commentId) {
         if (!repository.commentExists(postId, commentId)) {
             throw new NotFoundException("Comment not found");
         }
         repository.deleteComment(postId, commentId);
+        cache.invalidatePost(postId);
+        cache.invalidateComments(postId);
+        trending.refresh(postId);
+        versions.postChanged(postId);
     }
 
-    public void likePost(String postId, LikeRequest request) {
-        if (!repository.postExists(postId)) {
-            throw new NotFoundException("Post not found");
+    public void likePost(UUID postId, LikeRequest request) {
+        Instant now = now();
+        if (likeBuffer.isEnabled()) {
+            requirePost(postId);
+            likeBuffer.like(postId, request.username(), now);
+        } else {
+            LikeOutcome outcome = repository.insertLike(postId, request.username(), now);
+            if (outcome == LikeOutcome.POST_NOT_FOUND) {
+                throw new NotFoundException("Post not found");
+            }
+            if (outcome == LikeOutcome.UNCHANGED) {
+                throw new BadRequestException("Already liked");
+            }
+            cache.invalidatePost(postId);
         }
-        if (repository.likeExists(postId, request.username())) {
-            throw new BadRequestException("Already liked");
+        versions.postChanged(postId);
+        if (!likeBuffer.isEnabled()) {
+            // A buffered like is scored and announced by the flush that writes it.
+            trending.liked(postId, now);
+            events.publish(ActivityEvents.LIKE, new LikeEvent(postId, request.username(), now));
         }
-        repository.insertLike(postId, request.username());
     }
 
-    public void unlikePost(String postId, LikeRequest request) {
+    public void unlikePost(UUID postId, LikeRequest request) {
+        if (likeBuffer.isEnabled()) {
+            requirePost(postId);
+            likeBuffer.unlike(postId, request.username());
+        } else {
+            LikeOutcome outcome = repository.deleteLike(postId, request.username());
+            if (outcome == LikeOutcome.POST_NOT_FOUND) {
+                throw new NotFoundException("Post not found");
+            }
+            if (outcome == LikeOutcome.UNCHANGED) {
+                return;
+            }
+            cache.invalidatePost(postId);
+            trending.refresh(postId);
+        }
+        versions.postChanged(postId);
+    }
+
+    public List<BatchResult<Void>> applyLikes(List<LikeBatchItem> items) {
+        checkBatchSize(items.size());
+        BatchResult<Void>[] results = newResults(items.size());
+        List<LikeChange> changes = new ArrayList<>(items.size());
+        List<Integer> positions = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            LikeBatchItem item = items.get(i);
+            String error = validate(item);
+            if (error != null) {
+                results[i] = new BatchResult<>(400, null, error);
+            } else {
+                changes.add(new LikeChange(item.postId(), item.username(), item.liked()));
+                positions.add(i);
+            }
+        }
+        Instant now = now();
+        List<LikeOutcome> outcomes;
+        if (changes.isEmpty()) {
+            outcomes = List.of();
+        } else if (likeBuffer.isEnabled()) {
+            outcomes = likeBuffer.apply(changes, now);
+        } else {
+            outcomes = repository.applyLikes(changes, now);
+        }
+        Set<UUID> unliked = new LinkedHashSet<>();
+        List<LikeEvent> liked = new ArrayList<>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            LikeChange change = changes.get(i);
+            // Buffered changes are scored and announced by the flush that writes them.
+            if (outcomes.get(i) == LikeOutcome.CHANGED && !likeBuffer.isEnabled()) {
+                if (change.liked()) {
+                    trending.liked(change.postId(), now);
+                    liked.add(new LikeEvent(change.postId(), change.username(), now));
+                } else {
+                    unliked.add(change.postId());
+                }
+            }
+            results[positions.get(i)] = switch (outcomes.get(i)) {
+                case CHANGED -> new BatchResult<>(change.liked() ? 201 : 204, null, null);
+                case UNCHANGED -> change.liked()
+                        ? new BatchResult<>(400, null, "Already liked")
+                        : new BatchResult<>(204, null, null);
+                case POST_NOT_FOUND -> new BatchResult<>(404, null, "Post not found");
+            };
+        }
+        unliked.forEach(trending::refresh);
+        Set<UUID> touched = new LinkedHashSet<>();
+        for (LikeBatchItem item : items) {
+            if (item.postId() != null) {
+                touched.add(item.postId());
+            }
+        }
+        touched.forEach(postId -> {
+            cache.invalidatePost(postId);
+            versions.postChanged(postId);
+        });
+        liked.forEach(like -> events.publish(ActivityEvents.LIKE, like));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Loads posts and adds the likes still waiting in the write-behind buffer, counting each once.
+     */
+    private List<Post> postsWithPendingLikes(Supplier<List<Post>> query) {
+        return likeBuffer.read(() -> likeBuffer.withPendingLikes(query.get()));
+    }
+
+    /**
+     * Fills in {@code likedByViewer} for a whole page with a single likes lookup, letting a like
+     * or unlike still waiting in the write-behind buffer take precedence over the database.
+     */
+    private List<Post> withLikedByViewer(List<Post> posts, String viewer) {
+        if (viewer == null || posts.isEmpty()) {
+            return posts;
+        }
+        if (viewer.isBlank()) {
+            throw new BadRequestException("viewer must not be blank");
+        }
+        Set<UUID> liked = repository.findLikedPostIds(viewer, posts.stream().map(Post::id).toList());
+        return posts.stream()
+                .map(post -> {
+                    Boolean pending = likeBuffer.pendingLike(post.id(), viewer);
+                    return post.withLikedByViewer(pending != null ? pending : liked.contains(post.id()));
+                })
+                .toList();
+    }
+
+    private void requirePost(UUID postId) {
         if (!repository.postExists(postId)) {
             throw new NotFoundException("Post not found");
         }
-        repository.deleteLike(postId, request.username());
+    }
+
+    private Comment toComment(SocialAppRepository.CommentData comment) {
+        return new Comment(
+                comment.id(),
+                comment.postId(),
+                comment.username(),
+                comment.content(),
+                comment.createdAt(),
+                comment.updatedAt()
+        );
+    }
+
+    private static int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    /**
+     * The current time at the precision the database stores, so a write's response matches what
+     * later reads return.
+     */
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private static void checkBatchSize(int size) {
+        if (size < 1 || size > MAX_BATCH_SIZE) {
+            throw new BadRequestException("batch must contain between 1 and " + MAX_BATCH_SIZE + " items");
+        }
+    }
+
+    /**
+     * Returns the first constraint message for a batch item, or null when it is valid. Items are
+     * validated one by one so a bad item fails alone instead of rejecting the whole request.
+     */
+    private String validate(Object item) {
+        if (item == null) {
+            return "item is required";
+        }
+        return validator.validate(item).stream()
+                .sorted(Comparator.comparing(violation -> violation.getPropertyPath().toString()))
+                .map(ConstraintViolation::getMessage)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BatchResult<T>[] newResults(int size) {
+        return (BatchResult<T>[]) new BatchResult<?>[size];
+    }
+
+    private static PageCursor decodeCursor(String cursor) {
+        return cursor == null ? null : PageCursor.decode(cursor);
+    }
+
+    private static <T> Page<T> page(List<T> rows, int pageSize, Function<T, String> cursorOf) {
+        if (rows.size() <= pageSize) {
+            return new Page<>(rows, null);
+        }
+        List<T> items = rows.subList(0, pageSize);
+        return new Page<>(items, cursorOf.apply(items.get(pageSize - 1)));
+    }
+
+    /**
+     * Turns free text into an FTS5 expression matching posts that contain every word. Each word
+     * is quoted so the text can never be read as query syntax; a trailing {@code *} is kept as a
+     * prefix search.
+     */
+    private static String matchExpression(String query) {
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException("q is required");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new BadRequestException("q must be at most " + MAX_QUERY_LENGTH + " characters");
+        }
+        return Arrays.stream(query.trim().split("\\s+"))
+                .map(word -> {
+                    boolean prefix = word.length() > 1 && word.endsWith("*");
+                    String term = prefix ? word.substring(0, word.length() - 1) : word;
+                    return "\"" + term.replace("\"", "\"\"") + "\"" + (prefix ? "*" : "");
+                })
+                .collect(Collectors.joining(" "));
     }
 }
@@ -0,0 +1,239 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.repository.SocialAppRepository.Activity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Posts ranked by a time-decayed score of their likes and comments. A like counts 1 and a comment
+ * 2 at the moment it happens, and every contribution halves once per half-life.
+ *
+ * <p>Scores use forward decay: instead of shrinking every score as time passes, each new event is
+ * weighted by {@code 2^((t - landmark) / halfLife)}. All scores then decay by the same factor, so
+ * their order only changes when an event arrives, and the ranking can live in a sorted set that
+ * is updated in place. Reading the top k is a walk over its first k entries. Scores are kept as
+ * base-2 logarithms so the ever-growing weights cannot overflow.
+ *
+ * <p>The index is rebuilt from SQLite on startup and only kept in memory afterwards. Callers
+ * that score new activity bump the feed version themselves; changes the index makes on its own,
+ * by refreshing or pruning, bump it here so /posts/trending cannot be answered 304 with a stale
+ * ranking.
+ */
+@Component
+public class TrendingIndex {
+    private static final Logger log = LoggerFactory.getLogger(TrendingIndex.class);
+
+    private static final double LIKE_WEIGHT = 1;
+    private static final double COMMENT_WEIGHT = 2;
+    /**
+     * A single like eight half-lives old. Posts that decay below it are dropped, and activity too
+     * old to reach it on its own is never loaded.
+     */
+    private static final double MIN_SCORE = 1.0 / 256;
+    private static final double LN_2 = Math.log(2);
+    /**
+     * A post liked or commented on faster than its activity can be read back is left with its
+     * current score after this many tries, until its next refresh or until it decays away.
+     */
+    private static final int REFRESH_ATTEMPTS = 3;
+
+    private final SocialAppRepository repository;
+    private final ChangeVersions versions;
+    private final double halfLifeMillis;
+    private final long landmark = System.currentTimeMillis();
+    private final Map<UUID, Score> scores = new ConcurrentHashMap<>();
+    private final AtomicLong changes = new AtomicLong();
+    private final NavigableSet<Entry> ranking = new ConcurrentSkipListSet<>();
+
+    public TrendingIndex(
+            SocialAppRepository repository,
+            ChangeVersions versions,
+            @Value("${socialapp.trending.half-life:PT6H}") Duration halfLife,
+            MeterRegistry meterRegistry
+    ) {
+        this.repository = repository;
+        this.versions = versions;
+        this.halfLifeMillis = halfLife.toMillis();
+        Gauge.builder("socialapp.trending.posts", scores, Map::size)
+                .description("Posts with enough recent activity to be ranked as trending")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        repository.forEachActivitySince(horizon(), activity -> add(activity.postId(), logWeight(activity)));
+        log.info("Loaded {} posts into the trending index", scores.size());
+    }
+
+    public void liked(UUID postId, Instant at) {
+        add(postId, logWeight(at, LIKE_WEIGHT));
+    }
+
+    public void commented(UUID postId, Instant at) {
+        add(postId, logWeight(at, COMMENT_WEIGHT));
+    }
+
+    /**
+     * Recomputes a post's score from the database. Used when activity is taken away, since an
+     * unlike or deleted comment would otherwise need the time of the event it cancels.
+     *
+     * <p>The read happens outside the post's entry in {@code scores}, so likes and comments are
+     * never held up by it, and a failed read leaves the score as it was. Activity is stored before
+     * it is scored, so when the entry has changed by the time the read returns, the read may have
+     * missed that activity and is repeated rather than written over it.
+     */
+    public void refresh(UUID postId) {
+        for (int attempt = 0; attempt < REFRESH_ATTEMPTS; attempt++) {
+            Score seen = scores.get(postId);
+            double refreshed = Double.NEGATIVE_INFINITY;
+            for (Activity activity : repository.findPostActivitySince(postId, horizon())) {
+                refreshed = logAdd(refreshed, logWeight(activity));
+            }
+            if (replace(postId, seen, refreshed)) {
+                versions.feedChanged();
+                return;
+            }
+        }
+        log.debug("Post {} kept changing, its trending score was not refreshed", postId);
+    }
+
+    public void remove(UUID postId) {
+        scores.computeIfPresent(postId, (id, current) -> {
+            ranking.remove(new Entry(current.log(), id));
+            return null;
+        });
+    }
+
+    /**
+     * The ids of the highest-scoring posts, best first.
+     */
+    public List<UUID> top(int limit) {
+        List<UUID> postIds = new ArrayList<>(limit);
+        Iterator<Entry> entries = ranking.iterator();
+        while (postIds.size() < limit && entries.hasNext()) {
+            postIds.add(entries.next().postId());
+        }
+        return postIds;
+    }
+
+    @Scheduled(
+            initialDelayString = "${socialapp.trending.prune-interval:PT1M}",
+            fixedDelayString = "${socialapp.trending.prune-interval:PT1M}"
+    )
+    public int prune() {
+        double cutoff = logWeight(Instant.now(), MIN_SCORE);
+        int pruned = 0;
+        Iterator<Entry> lowestFirst = ranking.descendingIterator();
+        while (lowestFirst.hasNext()) {
+            Entry entry = lowestFirst.next();
+            if (entry.score() >= cutoff) {
+                break;
+            }
+            // A post scored again since the iterator saw it has moved up and stays.
+            Score current = scores.get(entry.postId());
+            if (current != null && current.log() == entry.score() && scores.remove(entry.postId(), current)) {
+                ranking.remove(entry);
+                pruned++;
+            }
+        }
+        if (pruned > 0) {
+            versions.feedChanged();
+        }
+        return pruned;
+    }
+
+    private void add(UUID postId, double logWeight) {
+        scores.compute(postId, (id, current) -> {
+            double score = logWeight;
+            if (current != null) {
+                ranking.remove(new Entry(current.log(), id));
+                score = logAdd(current.log(), logWeight);
+            }
+            ranking.add(new Entry(score, id));
+            return new Score(score, changes.incrementAndGet());
+        });
+    }
+
+    /**
+     * Sets a post's score to {@code log}, or drops it when that is no score at all, provided its
+     * entry is still {@code expected}. Reports whether it was.
+     */
+    private boolean replace(UUID postId, Score expected, double log) {
+        boolean[] replaced = {false};
+        scores.compute(postId, (id, current) -> {
+            if (!Objects.equals(current, expected)) {
+                return current;
+            }
+            replaced[0] = true;
+            if (current != null) {
+                ranking.remove(new Entry(current.log(), id));
+            }
+            if (log == Double.NEGATIVE_INFINITY) {
+                return null;
+            }
+            ranking.add(new Entry(log, id));
+            return new Score(log, changes.incrementAndGet());
+        });
+        return replaced[0];
+    }
+
+    private Instant horizon() {
+        double halfLives = Math.log(COMMENT_WEIGHT / MIN_SCORE) / LN_2;
+        return Instant.now().minusMillis((long) (halfLives * halfLifeMillis));
+    }
+
+    private double logWeight(Activity activity) {
+        return logWeight(activity.at(), activity.comment() ? COMMENT_WEIGHT : LIKE_WEIGHT);
+    }
+
+    private double logWeight(Instant at, double weight) {
+        return (at.toEpochMilli() - landmark) / halfLifeMillis + Math.log(weight) / LN_2;
+    }
+
+    /**
+     * {@code log2(2^a + 2^b)}, computed without leaving the log domain.
+     */
+    private static double logAdd(double a, double b) {
+        double high = Math.max(a, b);
+        double low = Math.min(a, b);
+        if (low == Double.NEGATIVE_INFINITY) {
+            return high;
+        }
+        return high + Math.log1p(Math.pow(2, low - high)) / LN_2;
+    }
+
+    /**
+     * A post's score and the change that set it, so an entry that was replaced in the meantime is
+     * never equal to the one a refresh started from, even with the same score.
+     */
+    private record Score(double log, long change) {
+    }
+
+    private record Entry(double score, UUID postId) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry other) {
+            int byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : postId.compareTo(other.postId);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.contoso.socialapp;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class for tests that start the application: each application context gets a database file
+ * of its own in a directory removed when the JVM exits.
+ *
+ * <p>The directory is not a JUnit {@code @TempDir}. Contexts are cached and reused by later test
+ * classes with the same configuration, which would otherwise find the first class's directory
+ * deleted under them.
+ */
+public abstract class SqliteTestDatabase {
+    private static final Path DATA_DIR = createDataDir();
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        // Resolved once here, since the supplier is asked again every time the property is read.
+        String url = "jdbc:sqlite:" + DATA_DIR.resolve("context-" + DATABASES.incrementAndGet() + ".db");
+        registry.add("spring.datasource.url", () -> url);
+    }
+
+    private static Path createDataDir() {
+        try {
+            Path dir = Files.createTempDirectory("socialapp-test");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    FileSystemUtils.deleteRecursively(dir);
+                } catch (IOException ex) {
+                    // Left for the OS to clean up with the rest of the temp directory.
+                }
+            }));
+            return dir;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.service.ActivityEvents;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reads /posts/stream over HTTP the way an EventSource does, against a ring of sixteen events and
+ * room for two subscribers.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "socialapp.stream.buffer-size=16",
+        "socialapp.stream.max-subscribers=2",
+        "socialapp.stream.heartbeat=PT0.1S"
+})
+@Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+class ActivityStreamTests extends SqliteTestDatabase {
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ActivityEvents events;
+
+    @Autowired
+    ActivityStream activity;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /**
+     * A closed connection is only noticed at the next heartbeat, so earlier tests' subscribers
+     * may still be counted for a moment.
+     */
+    @BeforeEach
+    void awaitNoSubscribers() throws InterruptedException {
+        while (meterRegistry.get("socialapp.stream.subscribers").gauge().value() > 0) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void aNewPostArrivesAsAnEvent() throws Exception {
+        try (Subscription stream = subscribe(null)) {
+            assertThat(stream.response.headers().firstValue(HttpHeaders.CONTENT_TYPE))
+                    .hasValueSatisfying(type -> assertThat(MediaType.parseMediaType(type).isCompatibleWith(MediaType.TEXT_EVENT_STREAM)).isTrue());
+
+            HttpResponse<String> created = client.send(HttpRequest.newBuilder(uri("/posts"))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"alice\",\"content\":\"Streamed\"}"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertThat(created.statusCode()).isEqualTo(201);
+
+            SseEvent event = stream.next();
+            assertThat(event.name()).isEqualTo(ActivityEvents.POST);
+            assertThat(event.id()).isEqualTo(events.id(events.latest()));
+            assertThat(event.data()).contains("\"username\":\"alice\"", "\"content\":\"Streamed\"");
+        }
+    }
+
+    @Test
+    void aReconnectingClientGetsWhatItMissed() throws Exception {
+        publish(3);
+        long first = events.latest() - 2;
+
+        try (Subscription stream = subscribe(events.id(first))) {
+            assertThat(stream.next().id()).isEqualTo(events.id(first + 1));
+            assertThat(stream.next().id()).isEqualTo(events.id(first + 2));
+        }
+    }
+
+    @Test
+    void anIdTooOldToResumeFromGetsAResync() throws Exception {
+        long before = events.latest();
+        publish(20);
+
+        for (String lastEventId : new String[]{events.id(before + 1), "not-an-id"}) {
+            try (Subscription stream = subscribe(lastEventId)) {
+                SseEvent resync = stream.next();
+                assertThat(resync.name()).isEqualTo(ActivityStream.RESYNC);
+                assertThat(resync.id()).isEqualTo(events.id(events.latest()));
+
+                publish(1);
+                assertThat(stream.next().id()).isEqualTo(events.id(events.latest()));
+            }
+        }
+    }
+
+    @Test
+    void aSubscriberThatFallsARingBehindIsDisconnected() throws Exception {
+        double dropped = meterRegistry.get("socialapp.stream.dropped").counter().count();
+        String padding = "x".repeat(16 * 1024);
+        try (Subscription stream = subscribe(null)) {
+            // Far more than the socket buffers hold, so the writer stalls while the ring wraps.
+            for (int i = 0; i < 4000; i++) {
+                events.publish(ActivityEvents.POST, Map.of("padding", padding));
+            }
+            long published = events.latest();
+
+            List<SseEvent> received = new ArrayList<>();
+            for (SseEvent event = stream.next(); event != null; event = stream.next()) {
+                received.add(event);
+            }
+
+            assertThat(received).isNotEmpty();
+            assertThat(received.getLast().id()).isNotEqualTo(events.id(published));
+            assertThat(meterRegistry.get("socialapp.stream.dropped").counter().count()).isEqualTo(dropped + 1);
+
+            try (Subscription again = subscribe(received.getLast().id())) {
+                assertThat(again.next().name()).isEqualTo(ActivityStream.RESYNC);
+            }
+        }
+    }
+
+    @Test
+    void subscribersOverTheLimitAreTurnedAway() throws Exception {
+        try (Subscription first = subscribe(null); Subscription second = subscribe(null)) {
+            HttpResponse<Void> third = client.send(streamRequest(null), HttpResponse.BodyHandlers.discarding());
+
+            assertThat(third.statusCode()).isEqualTo(503);
+            assertThat(third.headers().firstValue(HttpHeaders.RETRY_AFTER)).hasValue("10");
+        }
+    }
+
+    @Test
+    void shutdownEndsEveryStream() throws Exception {
+        try (Subscription stream = subscribe(null)) {
+            activity.closeAll();
+
+            assertThat(stream.next()).isNull();
+        }
+    }
+
+    private void publish(int count) {
+        for (int i = 0; i < count; i++) {
+            events.publish(ActivityEvents.LIKE, Map.of("n", i));
+        }
+    }
+
+    private Subscription subscribe(String lastEventId) throws IOException, InterruptedException {
+        HttpResponse<Stream<String>> response = client.send(streamRequest(lastEventId), HttpResponse.BodyHandlers.ofLines());
+        assertThat(response.statusCode()).isEqualTo(200);
+        return new Subscription(response);
+    }
+
+    private HttpRequest streamRequest(String lastEventId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri("/posts/stream"))
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return request.build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/api" + path);
+    }
+
+    private record SseEvent(String id, String name, String data) {
+    }
+
+    /**
+     * An open stream read one event at a time, skipping heartbeats and the frame that only sets
+     * the reconnect delay.
+     */
+    private static final class Subscription implements AutoCloseable {
+        private final HttpResponse<Stream<String>> response;
+        private final Iterator<String> lines;
+
+        Subscription(HttpResponse<Stream<String>> response) {
+            this.response = response;
+            this.lines = response.body().iterator();
+        }
+
+        /**
+         * Null once the server has ended the stream.
+         */
+        SseEvent next() {
+            String id = null;
+            String name = null;
+            StringBuilder data = null;
+            while (lines.hasNext()) {
+                String line = lines.next();
+                if (line.isEmpty()) {
+                    if (data != null) {
+                        return new SseEvent(id, name, data.toString());
+                    }
+                    id = null;
+                    name = null;
+                } else if (line.startsWith("id:")) {
+                    id = value(line);
+                } else if (line.startsWith("event:")) {
+                    name = value(line);
+                } else if (line.startsWith("data:")) {
+                    data = data == null ? new StringBuilder(value(line)) : data.append('\n').append(value(line));
+                }
+            }
+            return null;
+        }
+
+        private static String value(String line) {
+            String value = line.substring(line.indexOf(':') + 1);
+            return value.startsWith(" ") ? value.substring(1) : value;
+        }
+
+        @Override
+        public void close() {
+            response.body().close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.repository.DatabaseLatency;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs requests through the filter in front of a stand-in controller, with limits small enough
+ * that each test can reach them in a request or two.
+ */
+class AdmissionControlFilterTests {
+    private static final FilterChain OK = (request, response) -> {
+    };
+
+    @Test
+    void aRequestOverTheConcurrencyLimitIsTurnedAwayWithRetryAfter() {
+        AdmissionControlFilter filter = filter(0, 20);
+        AtomicReference<MockHttpServletResponse> second = new AtomicReference<>();
+
+        MockHttpServletResponse first = run(filter, get("/posts"),
+                (request, response) -> second.set(run(filter, get("/posts"), OK)));
+
+        assertThat(first.getStatus()).isEqualTo(200);
+        assertThat(second.get().getStatus()).isEqualTo(503);
+        assertThat(second.get().getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(run(filter, get("/posts"), OK).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void anAsyncRequestReleasesItsPermitWhenTheHandlerReturns() {
+        AdmissionControlFilter filter = filter(0, 20);
+        MockHttpServletRequest async = get("/posts");
+        async.setAsyncSupported(true);
+
+        run(filter, async, (request, response) -> request.startAsync());
+
+        assertThat(async.isAsyncStarted()).isTrue();
+        assertThat(run(filter, get("/posts"), OK).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void aUserOverTheirRateIsTurnedAwayWithRetryAfter() {
+        AdmissionControlFilter filter = filter(1, 1);
+
+        assertThat(run(filter, post("{\"username\":\"alice\",\"content\":\"Hi\"}"), OK).getStatus()).isEqualTo(200);
+        MockHttpServletResponse limited = run(filter, post("{\"username\":\" alice \",\"content\":\"Hi\"}"), OK);
+
+        assertThat(limited.getStatus()).isEqualTo(429);
+        assertThat(limited.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(run(filter, post("{\"username\":\"bob\",\"content\":\"Hi\"}"), OK).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void theControllerReadsTheBodyTheFilterAlreadyRead() {
+        String body = "{\"content\":\"Hi\",\"username\":\"alice\"}";
+        AtomicReference<String> received = new AtomicReference<>();
+
+        run(filter(1, 1), post(body), (request, response) ->
+                received.set(new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8)));
+
+        assertThat(received.get()).isEqualTo(body);
+    }
+
+    @Test
+    void aBatchChargesEachItemToItsOwnUsername() {
+        AdmissionControlFilter filter = filter(1, 2);
+
+        MockHttpServletResponse batch = run(filter, post("""
+                [{"username":"alice","content":"1"},{"username":"alice","content":"2"},
+                 {"username":"alice","content":"3"},{"username":"bob","content":"4"}]"""), OK);
+
+        assertThat(batch.getStatus()).isEqualTo(200);
+        assertThat(run(filter, post("{\"username\":\"alice\"}"), OK).getStatus()).isEqualTo(429);
+        assertThat(run(filter, post("{\"username\":\"bob\"}"), OK).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void aBodyWithoutAReadableUsernameIsChargedToTheClient() {
+        AdmissionControlFilter filter = filter(1, 1);
+        AtomicInteger reachedController = new AtomicInteger();
+        FilterChain counting = (request, response) -> reachedController.incrementAndGet();
+
+        assertThat(run(filter, post("{\"username\":"), counting).getStatus()).isEqualTo(200);
+        assertThat(run(filter, post("[1, 2]"), counting).getStatus()).isEqualTo(429);
+        MockHttpServletRequest plain = post("alice");
+        plain.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        assertThat(run(filter, plain, counting).getStatus()).isEqualTo(429);
+
+        MockHttpServletRequest elsewhere = post("{}");
+        elsewhere.setRemoteAddr("192.0.2.1");
+        assertThat(run(filter, elsewhere, counting).getStatus()).isEqualTo(200);
+        assertThat(reachedController).hasValue(2);
+    }
+
+    @Test
+    void aBodyOverTheLimitIsRefusedUnread() {
+        AtomicInteger reachedController = new AtomicInteger();
+
+        MockHttpServletResponse response = run(filter(1, 20), post("{\"username\":\"alice\",\"content\":\"" + "x".repeat(1024) + "\"}"),
+                (request, ignored) -> reachedController.incrementAndGet());
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(reachedController).hasValue(0);
+    }
+
+    /**
+     * One request at a time of each kind, and per-user buckets when {@code userRate} is positive.
+     */
+    private static AdmissionControlFilter filter(double userRate, int userBurst) {
+        return new AdmissionControlFilter(
+                new DatabaseLatency(), new JsonMapper(), new SimpleMeterRegistry(), true, 1, 1,
+                Duration.ofMillis(100), Duration.ofMillis(100), userRate, userBurst, DataSize.ofKilobytes(1)
+        );
+    }
+
+    private static MockHttpServletResponse run(AdmissionControlFilter filter, MockHttpServletRequest request, FilterChain chain) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            filter.doFilter(request, response, chain);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+        return response;
+    }
+
+    private static MockHttpServletRequest get(String path) {
+        return new MockHttpServletRequest("GET", path);
+    }
+
+    private static MockHttpServletRequest post(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/posts");
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
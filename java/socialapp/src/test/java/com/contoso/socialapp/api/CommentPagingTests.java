@@ -0,0 +1,104 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.model.CommentCreateRequest;
+import com.contoso.socialapp.model.PostCreateRequest;
+import com.contoso.socialapp.service.SocialAppService;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Pages through the comments on one post the way a client follows X-Next-Cursor.
+ */
+@SpringBootTest
+class CommentPagingTests extends SqliteTestDatabase {
+    private static final int COMMENTS = 45;
+
+    @Autowired
+    WebApplicationContext context;
+
+    @Autowired
+    SocialAppService service;
+
+    private MockMvc mvc;
+    private UUID postId;
+    private List<String> commentIds;
+
+    @BeforeEach
+    void setUp() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).build();
+        postId = service.createPost(new PostCreateRequest("author", "Paged")).id();
+        commentIds = new ArrayList<>();
+        // One at a time, so every comment has its own position in the order.
+        IntStream.range(0, COMMENTS).forEach(i -> commentIds.add(
+                service.createComment(postId, new CommentCreateRequest("reader", "Comment " + i)).id().toString()
+        ));
+    }
+
+    @Test
+    void withoutParametersTheFirstPageHasTheDefaultSize() throws Exception {
+        mvc.perform(get("/posts/{postId}/comments", postId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(20))
+                .andExpect(jsonPath("$[0].id").value(commentIds.getFirst()))
+                .andExpect(header().exists(PostController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void followingTheCursorReturnsEveryCommentOnceInOrder() throws Exception {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MvcResult page = mvc.perform(cursor == null
+                            ? get("/posts/{postId}/comments", postId)
+                            : get("/posts/{postId}/comments", postId).param("cursor", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            seen.addAll(JsonPath.read(page.getResponse().getContentAsString(), "$[*].id"));
+            cursor = page.getResponse().getHeader(PostController.NEXT_CURSOR_HEADER);
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).isEqualTo(commentIds);
+    }
+
+    @Test
+    void aLimitCoveringEveryCommentEndsThePaging() throws Exception {
+        mvc.perform(get("/posts/{postId}/comments", postId).param("limit", "100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(COMMENTS))
+                .andExpect(header().doesNotExist(PostController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void anInvalidLimitOrCursorIsABadRequest() throws Exception {
+        for (String limit : new String[]{"0", "101", "-1"}) {
+            mvc.perform(get("/posts/{postId}/comments", postId).param("limit", limit))
+                    .andExpect(status().isBadRequest());
+        }
+        for (String cursor : new String[]{"not base64!", "bm8tc2VwYXJhdG9y"}) {
+            mvc.perform(get("/posts/{postId}/comments", postId).param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+}
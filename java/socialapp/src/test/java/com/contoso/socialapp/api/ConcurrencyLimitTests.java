@@ -0,0 +1,103 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.repository.DatabaseLatency.Sample;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The AIMD cap behind the admission filter, fed latency samples by hand one window at a time.
+ */
+class ConcurrencyLimitTests {
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Sample FAST = new Sample(10, TARGET / 2);
+    private static final Sample SLOW = new Sample(10, TARGET * 2);
+
+    private final ConcurrencyLimit limit = new ConcurrencyLimit(4, 200, TARGET);
+
+    @Test
+    void slowWindowCutsTheLimitBelowThePeakInFlight() {
+        acquire(50);
+
+        limit.adjust(SLOW);
+
+        assertThat(limit.limit()).isEqualTo(45);
+    }
+
+    @Test
+    void cutsStopAtTheMinimum() {
+        acquire(2);
+
+        limit.adjust(SLOW);
+
+        assertThat(limit.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void fastWindowThatTurnedRequestsAwayGrowsTheLimitByOne() {
+        acquire(10);
+        limit.adjust(SLOW);
+        assertThat(limit.limit()).isEqualTo(9);
+
+        assertThat(limit.tryAcquire()).isFalse();
+        limit.adjust(FAST);
+
+        assertThat(limit.limit()).isEqualTo(10);
+    }
+
+    @Test
+    void fastWindowWithoutRejectionsLeavesTheLimitAlone() {
+        acquire(10);
+        limit.adjust(SLOW);
+
+        limit.adjust(FAST);
+
+        assertThat(limit.limit()).isEqualTo(9);
+    }
+
+    @Test
+    void releasedPermitsCanBeTakenAgain() {
+        acquire(10);
+        limit.adjust(SLOW);
+        assertThat(limit.tryAcquire()).isFalse();
+
+        limit.release();
+        assertThat(limit.tryAcquire()).isFalse();
+        limit.release();
+
+        assertThat(limit.inFlight()).isEqualTo(8);
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void retryAfterFollowsTheRejectionRatioWithinItsBounds() {
+        ConcurrencyLimit single = new ConcurrencyLimit(1, 1, TARGET);
+        assertThat(single.retryAfterSeconds()).isEqualTo(1);
+
+        assertThat(single.tryAcquire()).isTrue();
+        reject(single, 4);
+        single.adjust(FAST);
+        assertThat(single.retryAfterSeconds()).isEqualTo(4);
+
+        reject(single, 50);
+        single.adjust(FAST);
+        assertThat(single.retryAfterSeconds()).isEqualTo(10);
+
+        single.adjust(FAST);
+        assertThat(single.retryAfterSeconds()).isEqualTo(1);
+    }
+
+    private void acquire(int permits) {
+        for (int i = 0; i < permits; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+    }
+
+    private static void reject(ConcurrencyLimit limit, int requests) {
+        for (int i = 0; i < requests; i++) {
+            assertThat(limit.tryAcquire()).isFalse();
+        }
+    }
+}
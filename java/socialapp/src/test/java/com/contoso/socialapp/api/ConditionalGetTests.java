@@ -0,0 +1,140 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Revalidates cached responses the way a browser does, with the ETag from the last download in
+ * If-None-Match, around every kind of write that has to make that copy stale.
+ */
+@SpringBootTest
+class ConditionalGetTests extends SqliteTestDatabase {
+    @Autowired
+    WebApplicationContext context;
+
+    private MockMvc mvc;
+    private String postPath;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mvc = MockMvcBuilders.webAppContextSetup(context).build();
+        String created = mvc.perform(write(post("/posts"), "{\"username\":\"author\",\"content\":\"Tagged\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        postPath = "/posts/" + JsonPath.read(created, "$.id");
+    }
+
+    @Test
+    void anUnchangedPostIsNotModified() throws Exception {
+        String etag = etag(postPath);
+
+        mvc.perform(get(postPath).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        assertNotModified("/posts", etag("/posts"));
+        assertNotModified(postPath + "/comments", etag(postPath + "/comments"));
+    }
+
+    @Test
+    void editingThePostChangesItsTag() throws Exception {
+        String etag = etag(postPath);
+
+        mvc.perform(write(patch(postPath), "{\"username\":\"author\",\"content\":\"Edited\"}")).andExpect(status().isOk());
+
+        assertModified(postPath, etag);
+    }
+
+    @Test
+    void addingAndDeletingACommentChangesThePostAndCommentTags() throws Exception {
+        String postTag = etag(postPath);
+        String commentsTag = etag(postPath + "/comments");
+
+        String created = mvc.perform(write(post(postPath + "/comments"), "{\"username\":\"alice\",\"content\":\"First\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+
+        assertModified(postPath, postTag);
+        assertModified(postPath + "/comments", commentsTag);
+
+        postTag = etag(postPath);
+        commentsTag = etag(postPath + "/comments");
+        mvc.perform(delete(postPath + "/comments/" + JsonPath.read(created, "$.id"))).andExpect(status().isNoContent());
+
+        assertModified(postPath, postTag);
+        assertModified(postPath + "/comments", commentsTag);
+    }
+
+    @Test
+    void likingAndUnlikingChangesThePostTag() throws Exception {
+        String etag = etag(postPath);
+
+        mvc.perform(write(post(postPath + "/likes"), "{\"username\":\"alice\"}")).andExpect(status().isCreated());
+
+        assertModified(postPath, etag);
+
+        etag = etag(postPath);
+        mvc.perform(write(delete(postPath + "/likes"), "{\"username\":\"alice\"}")).andExpect(status().isNoContent());
+
+        assertModified(postPath, etag);
+    }
+
+    @Test
+    void anyWriteChangesTheFeedTag() throws Exception {
+        String etag = etag("/posts");
+
+        mvc.perform(write(post("/posts"), "{\"username\":\"author\",\"content\":\"Newer\"}")).andExpect(status().isCreated());
+
+        assertModified("/posts", etag);
+
+        etag = etag("/posts");
+        mvc.perform(write(post(postPath + "/likes"), "{\"username\":\"bob\"}")).andExpect(status().isCreated());
+
+        assertModified("/posts", etag);
+    }
+
+    private String etag(String path) throws Exception {
+        String etag = mvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotBlank();
+        return etag;
+    }
+
+    private void assertNotModified(String path, String etag) throws Exception {
+        mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified());
+    }
+
+    /**
+     * The stale tag gets the full response, under a new tag.
+     */
+    private void assertModified(String path, String staleEtag) throws Exception {
+        String etag = mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, staleEtag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotBlank().isNotEqualTo(staleEtag);
+    }
+
+    private static MockHttpServletRequestBuilder write(MockHttpServletRequestBuilder request, String body) {
+        return request.contentType(MediaType.APPLICATION_JSON).content(body);
+    }
+}
@@ -0,0 +1,28 @@
+package com.contoso.socialapp.api;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenApiControllerTests {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', nullValues = "null", value = {
+            "null                 | false",
+            "identity             | false",
+            "gzip                 | true",
+            "deflate, GZIP;q=0.5  | true",
+            "*                    | true",
+            "*;q=0                | false",
+            "gzip;q=0             | false",
+            "gzip;Q=0.000         | false",
+            "*, gzip;q=0          | false",
+            "gzip;q=0, *          | false",
+            "*;q=0, gzip          | true",
+            "br, *;q=0.1          | true"
+    })
+    void explicitGzipOutranksTheWildcard(String acceptEncoding, boolean gzip) {
+        assertThat(OpenApiController.acceptsGzip(acceptEncoding)).isEqualTo(gzip);
+    }
+}
@@ -0,0 +1,62 @@
+package com.contoso.socialapp.api;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Streamed feeds against a read limit of one. MockMvc leaves an async response open until it is
+ * dispatched, so each stream here stays held open for as long as the test needs.
+ */
+@SpringBootTest(properties = {
+        "socialapp.admission.min-limit=1",
+        "socialapp.admission.max-limit=1"
+})
+class StreamingAdmissionTests extends SqliteTestDatabase {
+    @Autowired
+    WebApplicationContext context;
+
+    @Autowired
+    AdmissionControlFilter admission;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).addFilters(admission).build();
+    }
+
+    @Test
+    void anOpenNdjsonStreamDoesNotHoldUpOtherReads() throws Exception {
+        MvcResult stream = mvc.perform(get("/posts").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(get("/posts")).andExpect(status().isOk());
+
+        mvc.perform(asyncDispatch(stream)).andExpect(status().isOk());
+    }
+
+    @Test
+    void anOpenJsonArrayStreamDoesNotHoldUpOtherReads() throws Exception {
+        MvcResult stream = mvc.perform(get("/posts").param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(get("/posts")).andExpect(status().isOk());
+
+        mvc.perform(asyncDispatch(stream)).andExpect(status().isOk());
+    }
+}
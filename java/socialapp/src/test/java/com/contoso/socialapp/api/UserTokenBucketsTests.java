@@ -0,0 +1,69 @@
+package com.contoso.socialapp.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Per-user token buckets on a clock each test moves by hand: one token a second, two at most.
+ */
+class UserTokenBucketsTests {
+    private long now;
+    private final UserTokenBuckets buckets = new UserTokenBuckets(1, 2, () -> now);
+
+    @Test
+    void aFullBucketAllowsItsBurstAndThenSaysWhenToComeBack() {
+        assertThat(buckets.tryAcquire("alice")).isZero();
+        assertThat(buckets.tryAcquire("alice")).isZero();
+
+        assertThat(buckets.tryAcquire("alice")).isEqualTo(1);
+
+        advanceMillis(1500);
+        assertThat(buckets.tryAcquire("alice")).isZero();
+        assertThat(buckets.tryAcquire("alice")).isEqualTo(1);
+    }
+
+    @Test
+    void eachKeyHasItsOwnBucket() {
+        buckets.tryAcquire("alice");
+        buckets.tryAcquire("alice");
+
+        assertThat(buckets.tryAcquire("alice")).isPositive();
+        assertThat(buckets.tryAcquire("bob")).isZero();
+    }
+
+    @Test
+    void aBatchBiggerThanTheBurstGoesThroughAndCostsAsLongAsItsItemsWould() {
+        assertThat(buckets.tryAcquire(Map.of("alice", 5))).isZero();
+
+        assertThat(buckets.tryAcquire("alice")).isEqualTo(4);
+
+        advanceMillis(3500);
+        assertThat(buckets.tryAcquire("alice")).isEqualTo(1);
+        advanceMillis(1000);
+        assertThat(buckets.tryAcquire("alice")).isZero();
+    }
+
+    @Test
+    void aBatchOneSenderCannotPayForTakesNothingFromTheOthers() {
+        buckets.tryAcquire("bob");
+        buckets.tryAcquire("bob");
+        Map<String, Integer> batch = new LinkedHashMap<>();
+        batch.put("alice", 1);
+        batch.put("bob", 1);
+
+        assertThat(buckets.tryAcquire(batch)).isEqualTo(1);
+
+        assertThat(buckets.tryAcquire("alice")).isZero();
+        assertThat(buckets.tryAcquire("alice")).isZero();
+        assertThat(buckets.tryAcquire("alice")).isPositive();
+    }
+
+    private void advanceMillis(long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,181 @@
+package com.contoso.socialapp.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Migrates a database file laid out the way the first release of the app left it: UUID strings
+ * for ids, ISO-8601 strings for timestamps and no schema version, with rows already in it.
+ */
+class DatabaseInitializerTests {
+    private static final String POST_A = "0190a1b2-c3d4-7e5f-8a9b-0c1d2e3f4a5b";
+    private static final String POST_B = "0190a1b2-c3d4-7e5f-8a9b-0c1d2e3f4a5c";
+    private static final String COMMENT_A = "0190a1b2-c3d4-7e5f-8a9b-0c1d2e3f4a6a";
+    private static final String COMMENT_B = "0190a1b2-c3d4-7e5f-8a9b-0c1d2e3f4a6b";
+    private static final String COMMENT_C = "0190a1b2-c3d4-7e5f-8a9b-0c1d2e3f4a6c";
+    private static final String ALL_POSTS =
+            "SELECT hex(id) AS id, username, content, createdAt, updatedAt, likeCount, commentCount FROM posts ORDER BY id";
+
+    @TempDir
+    Path dataDir;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void createBaselineDatabase() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + dataDir.resolve("baseline.db"), true);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("PRAGMA foreign_keys = ON");
+        jdbc.execute("CREATE TABLE posts (id TEXT PRIMARY KEY, username TEXT NOT NULL, content TEXT NOT NULL, " +
+                "createdAt TEXT NOT NULL, updatedAt TEXT NOT NULL)");
+        jdbc.execute("CREATE TABLE comments (id TEXT PRIMARY KEY, postId TEXT NOT NULL, username TEXT NOT NULL, " +
+                "content TEXT NOT NULL, createdAt TEXT NOT NULL, updatedAt TEXT NOT NULL, " +
+                "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE)");
+        jdbc.execute("CREATE TABLE likes (postId TEXT NOT NULL, username TEXT NOT NULL, PRIMARY KEY (postId, username), " +
+                "FOREIGN KEY(postId) REFERENCES posts(id) ON DELETE CASCADE)");
+        // Instant.toString() drops trailing zeros, so stored values vary in their fractional digits.
+        insertPost(POST_A, "Harbour sunrise", "2024-03-01T10:15:30Z", "2024-03-01T10:15:30.5Z");
+        insertPost(POST_B, "Mountain trail", "2024-03-01T10:15:30.123456789Z", "2024-03-02T08:00:00.25Z");
+        insertComment(COMMENT_A, POST_A, "Lovely harbour", "2024-03-01T11:00:00.1Z");
+        insertComment(COMMENT_B, POST_A, "Early start", "2024-03-01T11:30:00Z");
+        insertComment(COMMENT_C, POST_B, "Which trail?", "2024-03-02T09:00:00.999Z");
+        jdbc.update("INSERT INTO likes (postId, username) VALUES (?, 'alice'), (?, 'bob'), (?, 'alice')",
+                POST_A, POST_A, POST_B);
+    }
+
+    @AfterEach
+    void close() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void migratesBaselineRowsToBlobIdsAndEpochMillis() {
+        migrate();
+
+        assertThat(jdbc.queryForList("SELECT version FROM schema_version ORDER BY version", Integer.class))
+                .containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertThat(jdbc.queryForList("SELECT DISTINCT typeof(id) FROM posts UNION SELECT DISTINCT typeof(id) FROM comments " +
+                "UNION SELECT DISTINCT typeof(postId) FROM comments UNION SELECT DISTINCT typeof(postId) FROM likes", String.class))
+                .containsExactly("blob");
+        assertThat(jdbc.queryForList("SELECT typeof(createdAt) || typeof(updatedAt) FROM posts " +
+                "UNION SELECT typeof(createdAt) || typeof(updatedAt) FROM comments", String.class))
+                .containsExactly("integerinteger");
+
+        assertThat(post(POST_A)).containsEntry("createdAt", millis("2024-03-01T10:15:30Z"))
+                .containsEntry("updatedAt", millis("2024-03-01T10:15:30.5Z"))
+                .containsEntry("likeCount", 2)
+                .containsEntry("commentCount", 2);
+        assertThat(post(POST_B)).containsEntry("createdAt", millis("2024-03-01T10:15:30.123Z"))
+                .containsEntry("updatedAt", millis("2024-03-02T08:00:00.25Z"))
+                .containsEntry("likeCount", 1)
+                .containsEntry("commentCount", 1);
+        assertThat(jdbc.queryForObject("SELECT createdAt FROM comments WHERE id = ?", Long.class, blob(COMMENT_C)))
+                .isEqualTo(millis("2024-03-02T09:00:00.999Z"));
+        assertThat(jdbc.queryForList("SELECT lower(hex(id)) FROM comments WHERE postId = ? ORDER BY createdAt",
+                String.class, blob(POST_A)))
+                .containsExactly(hex(COMMENT_A), hex(COMMENT_B));
+        assertThat(jdbc.queryForObject("SELECT createdAt FROM likes WHERE postId = ? AND username = 'bob'",
+                Long.class, blob(POST_A)))
+                .isEqualTo(millis("2024-03-01T10:15:30Z"));
+        assertThat(jdbc.queryForList("PRAGMA foreign_key_check")).isEmpty();
+    }
+
+    @Test
+    void migratedRowsAreSearchableAndKeepTheirCountersUpToDate() {
+        migrate();
+
+        assertThat(jdbc.queryForList("SELECT lower(hex(posts.id)) FROM posts_fts " +
+                "JOIN posts ON posts.seq = posts_fts.rowid WHERE posts_fts MATCH 'trail'", String.class))
+                .containsExactly(hex(POST_B));
+        assertThat(jdbc.queryForList("SELECT lower(hex(comments.id)) FROM comments_fts " +
+                "JOIN comments ON comments.seq = comments_fts.rowid WHERE comments_fts MATCH 'harbour'", String.class))
+                .containsExactly(hex(COMMENT_A));
+
+        jdbc.update("INSERT INTO likes (postId, username, createdAt) VALUES (?, 'carol', 0)", blob(POST_B));
+        jdbc.update("DELETE FROM comments WHERE id = ?", blob(COMMENT_A));
+        assertThat(post(POST_B)).containsEntry("likeCount", 2);
+        assertThat(post(POST_A)).containsEntry("commentCount", 1);
+        assertThat(jdbc.queryForList("SELECT rowid FROM comments_fts WHERE comments_fts MATCH 'harbour'")).isEmpty();
+    }
+
+    @Test
+    void searchIndexesFollowRowsThroughAVacuum() {
+        migrate();
+        jdbc.update("DELETE FROM posts WHERE id = ?", blob(POST_A));
+        jdbc.update("INSERT INTO posts (id, username, content, createdAt, updatedAt) VALUES (?, 'author', 'Harbour at dusk', 0, 0)",
+                blob(POST_A.replace("4a5b", "4a5d")));
+
+        jdbc.execute("VACUUM");
+
+        assertThat(jdbc.queryForList("SELECT posts.content FROM posts_fts " +
+                "JOIN posts ON posts.seq = posts_fts.rowid WHERE posts_fts MATCH 'harbour OR trail' ORDER BY posts.seq", String.class))
+                .containsExactly("Mountain trail", "Harbour at dusk");
+    }
+
+    @Test
+    void runningAgainChangesNothing() {
+        migrate();
+        List<Map<String, Object>> posts = jdbc.queryForList(ALL_POSTS);
+
+        migrate();
+
+        assertThat(jdbc.queryForList(ALL_POSTS)).isEqualTo(posts);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM schema_version", Integer.class)).isEqualTo(9);
+    }
+
+    @Test
+    void anIdThatIsNotAUuidLeavesTheIdsAsTheyWere() {
+        insertPost("not-a-uuid", "Imported by hand", "2024-03-03T00:00:00Z", "2024-03-03T00:00:00Z");
+
+        assertThatThrownBy(this::migrate).isInstanceOf(IllegalStateException.class).hasMessageContaining("posts");
+
+        assertThat(jdbc.queryForList("SELECT DISTINCT typeof(id) FROM posts", String.class)).containsExactly("text");
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM posts", Integer.class)).isEqualTo(3);
+        assertThat(jdbc.queryForObject("PRAGMA foreign_keys", Integer.class)).isEqualTo(1);
+    }
+
+    private void migrate() {
+        new DatabaseInitializer(jdbc, new DataSourceTransactionManager(dataSource)).initialize();
+    }
+
+    private void insertPost(String id, String content, String createdAt, String updatedAt) {
+        jdbc.update("INSERT INTO posts (id, username, content, createdAt, updatedAt) VALUES (?, 'author', ?, ?, ?)",
+                id, content, createdAt, updatedAt);
+    }
+
+    private void insertComment(String id, String postId, String content, String createdAt) {
+        jdbc.update("INSERT INTO comments (id, postId, username, content, createdAt, updatedAt) VALUES (?, ?, 'reader', ?, ?, ?)",
+                id, postId, content, createdAt, createdAt);
+    }
+
+    private Map<String, Object> post(String id) {
+        return jdbc.queryForMap("SELECT createdAt, updatedAt, likeCount, commentCount FROM posts WHERE id = ?", blob(id));
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+
+    private static String hex(String uuid) {
+        return uuid.replace("-", "");
+    }
+
+    private static byte[] blob(String uuid) {
+        return HexFormat.of().parseHex(hex(uuid));
+    }
+}
@@ -0,0 +1,70 @@
+package com.contoso.socialapp.repository;
+
+import com.contoso.socialapp.config.DatabaseInitializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs {@code EXPLAIN QUERY PLAN} for every repository statement against the migrated schema.
+ * A request-path statement may not scan a table without an index or sort into a temporary b-tree,
+ * except that relevance-ranked searches sort their matches.
+ */
+class QueryPlanTests {
+    private static final Pattern FULL_SCAN = Pattern.compile("^SCAN (\\w+)$");
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static Set<String> tables;
+
+    @BeforeAll
+    static void migrate() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new DatabaseInitializer(jdbcTemplate, new DataSourceTransactionManager(dataSource)).initialize();
+        tables = Set.copyOf(jdbcTemplate.queryForList("SELECT name FROM sqlite_schema WHERE type = 'table'", String.class));
+    }
+
+    @AfterAll
+    static void close() {
+        dataSource.destroy();
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlStatement.class)
+    void usesAnIndex(SqlStatement statement) {
+        List<String> plan = jdbcTemplate.query(
+                "EXPLAIN QUERY PLAN " + statement.sql(),
+                (rs, rowNum) -> rs.getString("detail")
+        );
+
+        if (statement.isBackground()) {
+            return;
+        }
+        assertThat(plan).as("query plan for %s", statement)
+                .noneMatch(QueryPlanTests::scansATable);
+        if (!statement.isRanked()) {
+            assertThat(plan).as("query plan for %s", statement)
+                    .noneMatch(step -> step.startsWith("USE TEMP B-TREE"));
+        }
+    }
+
+    /**
+     * Scanning a subquery's materialized rows is fine; scanning a stored table is not.
+     */
+    private static boolean scansATable(String step) {
+        Matcher scan = FULL_SCAN.matcher(step);
+        return scan.matches() && tables.contains(scan.group(1));
+    }
+}
@@ -0,0 +1,96 @@
+package com.contoso.socialapp.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The writer thread has to outlive any write it runs, and no caller may wait on it forever.
+ */
+class WriteQueueTests {
+    private SingleConnectionDataSource dataSource;
+    private WriteQueue writes;
+
+    @BeforeEach
+    void start() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        new JdbcTemplate(dataSource).execute("CREATE TABLE items (name TEXT)");
+        writes = new WriteQueue(
+                new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource),
+                new SimpleMeterRegistry(), new DatabaseLatency(), 16, 8, Duration.ofMillis(500)
+        );
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        writes.shutdown();
+        dataSource.destroy();
+    }
+
+    @Test
+    void anErrorFailsItsBatchAndTheWriterCarriesOn() {
+        assertThatThrownBy(() -> writes.execute(jdbc -> {
+            jdbc.update("INSERT INTO items VALUES ('lost')");
+            throw new AssertionError("boom");
+        })).isInstanceOf(AssertionError.class);
+
+        int inserted = writes.execute(jdbc -> jdbc.update("INSERT INTO items VALUES ('kept')"));
+
+        assertThat(inserted).isEqualTo(1);
+        assertThat(new JdbcTemplate(dataSource).queryForList("SELECT name FROM items", String.class))
+                .containsExactly("kept");
+    }
+
+    @Test
+    void aWriteStuckBehindASlowOneTimesOut() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slow = Thread.ofVirtual().start(() -> {
+            try {
+                writes.execute(jdbc -> {
+                    started.countDown();
+                    await(release);
+                    return null;
+                });
+            } catch (TransientDataAccessResourceException ex) {
+                // It times out too.
+            }
+        });
+        try {
+            await(started);
+            assertThatThrownBy(() -> writes.execute(jdbc -> jdbc.update("INSERT INTO items VALUES ('late')")))
+                    .isInstanceOf(TransientDataAccessResourceException.class);
+        } finally {
+            release.countDown();
+            slow.join();
+        }
+    }
+
+    @Test
+    void writesAfterShutdownFailInsteadOfHanging() throws InterruptedException {
+        writes.shutdown();
+
+        assertThatThrownBy(() -> writes.execute(jdbc -> jdbc.update("INSERT INTO items VALUES ('late')")))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.service.ActivityEvents.Event;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The ring behind the activity stream, four events deep so a test can wrap it in a few publishes.
+ */
+class ActivityEventsTests {
+    private final ActivityEvents events = new ActivityEvents(new JsonMapper(), 4);
+
+    @Test
+    void eventsAreNumberedFromOneAndSerializedOnce() {
+        assertThat(events.latest()).isZero();
+
+        events.publish(ActivityEvents.POST, Map.of("content", "First"));
+
+        Event event = events.get(1);
+        assertThat(events.latest()).isEqualTo(1);
+        assertThat(event.type()).isEqualTo(ActivityEvents.POST);
+        assertThat(event.data()).isEqualTo("{\"content\":\"First\"}");
+        assertThat(event.id()).isEqualTo(events.id(1));
+    }
+
+    @Test
+    void anOverwrittenEventIsGone() {
+        publish(6);
+
+        assertThat(events.get(1)).isNull();
+        assertThat(events.get(2)).isNull();
+        assertThat(LongStream.rangeClosed(3, 6).mapToObj(events::get))
+                .extracting(Event::sequence)
+                .containsExactly(3L, 4L, 5L, 6L);
+    }
+
+    @Test
+    void aClientResumesAfterAnyEventStillFollowedByTheRing() {
+        publish(6);
+
+        assertThat(events.resumeAfter(events.id(6))).isEqualTo(6);
+        assertThat(events.resumeAfter(events.id(2))).isEqualTo(2);
+        assertThat(events.get(3)).isNotNull();
+    }
+
+    @Test
+    void anIdTheRingCannotResumeFromIsRefused() {
+        publish(6);
+
+        assertThat(events.resumeAfter(events.id(1))).isEqualTo(-1);
+        assertThat(events.resumeAfter(events.id(7))).isEqualTo(-1);
+        assertThat(events.resumeAfter("0-5")).isEqualTo(-1);
+        assertThat(events.resumeAfter("5")).isEqualTo(-1);
+        assertThat(events.resumeAfter(events.id(5) + "!")).isEqualTo(-1);
+        assertThat(events.resumeAfter(events.id(5).replace("-", "--"))).isEqualTo(-1);
+    }
+
+    @Test
+    void awaitReturnsOnPublishOrTimeout() throws InterruptedException {
+        publish(1);
+        assertThat(events.await(0, 1, TimeUnit.SECONDS)).isEqualTo(1);
+
+        assertThat(events.await(1, 50, TimeUnit.MILLISECONDS)).isEqualTo(1);
+
+        Thread.ofVirtual().start(() -> publish(1));
+        assertThat(events.await(1, 5, TimeUnit.SECONDS)).isEqualTo(2);
+    }
+
+    private void publish(int count) {
+        for (int i = 0; i < count; i++) {
+            events.publish(ActivityEvents.LIKE, Map.of("n", i));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.model.LikeBatchItem;
+import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.PostCreateRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Trending scores with likes buffered, flushed only when a test says so. However often a like is
+ * toggled before it is written, it must count as the one like that was stored, or not at all.
+ */
+@SpringBootTest(properties = {
+        "socialapp.likes.write-behind.enabled=true",
+        "socialapp.likes.write-behind.flush-interval=PT1H",
+        "socialapp.likes.write-behind.max-lag=PT1H"
+})
+class BufferedLikeScoringTests extends SqliteTestDatabase {
+    private static final int TOGGLES = 25;
+
+    @Autowired
+    SocialAppService service;
+
+    @Autowired
+    LikeWriteBuffer likeBuffer;
+
+    @Test
+    void aLikeToggledWhileBufferedScoresAsOneStoredLike() throws InterruptedException {
+        UUID toggled = newPost();
+        UUID likedOnce = newPost();
+        for (int i = 0; i < TOGGLES; i++) {
+            service.likePost(toggled, new LikeRequest("alice"));
+            service.unlikePost(toggled, new LikeRequest("alice"));
+        }
+        service.likePost(toggled, new LikeRequest("alice"));
+        likeBuffer.flush();
+        // A single like made later outranks it, which any second like on the toggled post would undo.
+        Thread.sleep(5);
+        service.likePost(likedOnce, new LikeRequest("bob"));
+        likeBuffer.flush();
+
+        assertThat(ranked(toggled, likedOnce)).containsExactly(likedOnce, toggled);
+    }
+
+    @Test
+    void aLikeToggledOffWhileBufferedIsNotScored() {
+        UUID toggled = newPost();
+        for (int i = 0; i < TOGGLES; i++) {
+            service.applyLikes(List.of(
+                    new LikeBatchItem(toggled, "alice", true),
+                    new LikeBatchItem(toggled, "alice", false)
+            ));
+        }
+        likeBuffer.flush();
+
+        assertThat(ranked(toggled)).isEmpty();
+    }
+
+    private UUID newPost() {
+        return service.createPost(new PostCreateRequest("author", "Trending")).id();
+    }
+
+    private List<UUID> ranked(UUID... postIds) {
+        List<UUID> wanted = List.of(postIds);
+        return service.trendingPosts(SocialAppService.MAX_PAGE_SIZE).stream()
+                .map(Post::id)
+                .filter(wanted::contains)
+                .toList();
+    }
+}
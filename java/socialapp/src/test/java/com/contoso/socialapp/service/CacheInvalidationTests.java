@@ -0,0 +1,134 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.exception.NotFoundException;
+import com.contoso.socialapp.model.Comment;
+import com.contoso.socialapp.model.CommentCreateRequest;
+import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.PostCreateRequest;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Reads through the post and comment caches, changes what they hold, and reads again. Every
+ * mutation has to be visible to the very next read, long before the cache entries would expire.
+ */
+@SpringBootTest
+class CacheInvalidationTests extends SqliteTestDatabase {
+    @Autowired
+    SocialAppService service;
+
+    @Test
+    void aNewPostLeadsTheFeed() {
+        service.listPosts(null, null, null);
+
+        UUID postId = newPost();
+
+        assertThat(service.listPosts(null, null, null).items().getFirst().id()).isEqualTo(postId);
+    }
+
+    @Test
+    void aDeletedPostAndItsCommentsAreGone() {
+        UUID postId = newPost();
+        service.createComment(postId, new CommentCreateRequest("alice", "First"));
+        assertThat(service.getPost(postId).commentCount()).isEqualTo(1);
+        assertThat(service.listComments(postId, null, null).items()).hasSize(1);
+
+        service.deletePost(postId);
+
+        assertThatThrownBy(() -> service.getPost(postId)).isInstanceOf(NotFoundException.class);
+        assertThat(service.listComments(postId, null, null).items()).isEmpty();
+    }
+
+    @Test
+    void addingAndDeletingACommentShowsOnThePostAndItsComments() {
+        UUID postId = newPost();
+        assertThat(service.getPost(postId).commentCount()).isZero();
+        assertThat(service.listComments(postId, null, null).items()).isEmpty();
+
+        Comment comment = service.createComment(postId, new CommentCreateRequest("alice", "First"));
+
+        assertThat(service.getPost(postId).commentCount()).isEqualTo(1);
+        assertThat(service.listComments(postId, null, null).items()).extracting(Comment::id).containsExactly(comment.id());
+
+        service.deleteComment(postId, comment.id());
+
+        assertThat(service.getPost(postId).commentCount()).isZero();
+        assertThat(service.listComments(postId, null, null).items()).isEmpty();
+    }
+
+    @Test
+    void likingAndUnlikingShowsOnThePost() {
+        UUID postId = newPost();
+        assertLikes(postId, 0, false);
+
+        service.likePost(postId, new LikeRequest("alice"));
+
+        assertLikes(postId, 1, true);
+
+        service.unlikePost(postId, new LikeRequest("alice"));
+
+        assertLikes(postId, 0, false);
+    }
+
+    /**
+     * The same, with likes buffered until the test flushes them: the count read before a flush
+     * comes from the buffer, and the one read after it from the database.
+     */
+    @Nested
+    @TestPropertySource(properties = {
+            "socialapp.likes.write-behind.enabled=true",
+            "socialapp.likes.write-behind.flush-interval=PT1H",
+            "socialapp.likes.write-behind.max-lag=PT1H"
+    })
+    class WithLikesBuffered {
+        @Autowired
+        SocialAppService buffered;
+
+        @Autowired
+        LikeWriteBuffer likeBuffer;
+
+        @Test
+        void likingAndUnlikingShowsOnThePostBeforeAndAfterAFlush() {
+            assertThat(likeBuffer.isEnabled()).isTrue();
+            UUID postId = buffered.createPost(new PostCreateRequest("author", "Cached")).id();
+            assertLikes(buffered, postId, 0, false);
+
+            buffered.likePost(postId, new LikeRequest("alice"));
+
+            assertLikes(buffered, postId, 1, true);
+            likeBuffer.flush();
+            assertLikes(buffered, postId, 1, true);
+
+            buffered.unlikePost(postId, new LikeRequest("alice"));
+
+            assertLikes(buffered, postId, 0, false);
+            likeBuffer.flush();
+            assertLikes(buffered, postId, 0, false);
+        }
+    }
+
+    private UUID newPost() {
+        return service.createPost(new PostCreateRequest("author", "Cached")).id();
+    }
+
+    private void assertLikes(UUID postId, int count, boolean likedByAlice) {
+        assertLikes(service, postId, count, likedByAlice);
+    }
+
+    private static void assertLikes(SocialAppService service, UUID postId, int count, boolean likedByAlice) {
+        assertThat(service.getPost(postId).likeCount()).isEqualTo(count);
+        assertThat(service.getPost(postId, "alice"))
+                .extracting(Post::likeCount, Post::likedByViewer)
+                .containsExactly(count, likedByAlice);
+    }
+}
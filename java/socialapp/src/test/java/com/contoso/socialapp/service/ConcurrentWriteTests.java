@@ -0,0 +1,180 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.exception.BadRequestException;
+import com.contoso.socialapp.exception.NotFoundException;
+import com.contoso.socialapp.model.BatchResult;
+import com.contoso.socialapp.model.CommentCreateRequest;
+import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.PostCreateRequest;
+import com.contoso.socialapp.repository.SocialAppRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fires likes, unlikes and comments at the same posts from many threads at once. Every call has
+ * to end in one of the API's own outcomes, never a constraint violation, and the counters have to
+ * match the rows left behind.
+ */
+@SpringBootTest
+class ConcurrentWriteTests extends SqliteTestDatabase {
+    private static final int THREADS = 64;
+
+    @Autowired
+    SocialAppService service;
+
+    @Autowired
+    SocialAppRepository repository;
+
+    @Test
+    void sameUserLikingConcurrentlySucceedsOnce() throws Exception {
+        UUID postId = newPost();
+        AtomicInteger liked = new AtomicInteger();
+        AtomicInteger alreadyLiked = new AtomicInteger();
+
+        race(i -> {
+            try {
+                service.likePost(postId, new LikeRequest("alice"));
+                liked.incrementAndGet();
+            } catch (BadRequestException ex) {
+                alreadyLiked.incrementAndGet();
+            }
+        });
+
+        assertThat(liked).hasValue(1);
+        assertThat(alreadyLiked).hasValue(THREADS - 1);
+        assertThat(service.getPost(postId).likeCount()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentLikesAndUnlikesKeepTheCounterExact() throws Exception {
+        UUID postId = newPost();
+
+        race(i -> {
+            String username = "user" + (i % 8);
+            for (int round = 0; round < 20; round++) {
+                try {
+                    if ((i + round) % 2 == 0) {
+                        service.likePost(postId, new LikeRequest(username));
+                    } else {
+                        service.unlikePost(postId, new LikeRequest(username));
+                    }
+                } catch (BadRequestException ex) {
+                    // Someone else liked it first.
+                }
+            }
+        });
+
+        long likes = IntStream.range(0, 8).filter(user -> repository.likeExists(postId, "user" + user)).count();
+        assertThat(service.getPost(postId).likeCount()).isEqualTo(likes);
+        assertThat(repository.findPostIdsWithCounterDrift()).doesNotContain(postId);
+    }
+
+    @Test
+    void commentsRacingAPostDeletionAreEitherCreatedOrNotFound() throws Exception {
+        UUID postId = newPost();
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger notFound = new AtomicInteger();
+
+        race(i -> {
+            if (i == THREADS / 2) {
+                service.deletePost(postId);
+                return;
+            }
+            for (int round = 0; round < 5; round++) {
+                try {
+                    service.createComment(postId, new CommentCreateRequest("user" + i, "Comment " + round));
+                    created.incrementAndGet();
+                } catch (NotFoundException ex) {
+                    notFound.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(created.get() + notFound.get()).isEqualTo((THREADS - 1) * 5);
+        assertThat(repository.findCommentsPage(postId, null, 1)).isEmpty();
+    }
+
+    @Test
+    void commentBatchesRacingAPostDeletionAnswerEachItem() throws Exception {
+        UUID postId = newPost();
+        List<CommentCreateRequest> batch = List.of(
+                new CommentCreateRequest("alice", "First"),
+                new CommentCreateRequest("bob", ""),
+                new CommentCreateRequest("carol", "Third")
+        );
+        List<List<Integer>> statuses = new CopyOnWriteArrayList<>();
+
+        race(i -> {
+            if (i == THREADS / 2) {
+                service.deletePost(postId);
+                return;
+            }
+            statuses.add(service.createComments(postId, batch).stream().map(BatchResult::status).toList());
+        });
+
+        assertThat(statuses).hasSize(THREADS - 1)
+                .allSatisfy(items -> assertThat(items).isIn(List.of(201, 400, 201), List.of(404, 400, 404)));
+        assertThat(repository.findCommentsPage(postId, null, 1)).isEmpty();
+    }
+
+    @Test
+    void likingAMissingPostIsNotFound() throws Exception {
+        UUID missing = UuidV7.generate();
+        AtomicInteger notFound = new AtomicInteger();
+
+        race(i -> {
+            try {
+                service.likePost(missing, new LikeRequest("user" + i));
+            } catch (NotFoundException ex) {
+                notFound.incrementAndGet();
+            }
+        });
+
+        assertThat(notFound).hasValue(THREADS);
+    }
+
+    private UUID newPost() {
+        Post post = service.createPost(new PostCreateRequest("author", "Contended post"));
+        return post.id();
+    }
+
+    /**
+     * Runs {@code task} once per thread, releasing every thread at the same moment, and rethrows
+     * the first exception a task didn't handle itself.
+     */
+    private static void race(IntConsumer task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>(THREADS);
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int i = 0; i < THREADS; i++) {
+                int thread = i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    task.accept(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+    }
+}
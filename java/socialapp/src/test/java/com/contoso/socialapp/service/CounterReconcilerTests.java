@@ -0,0 +1,66 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.model.CommentCreateRequest;
+import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.PostCreateRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Breaks the stored counters behind the triggers' back and lets the reconciler put them right.
+ */
+@SpringBootTest
+class CounterReconcilerTests extends SqliteTestDatabase {
+    @Autowired
+    CounterReconciler reconciler;
+
+    @Autowired
+    SocialAppService service;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Test
+    void driftedCountersAreRecountedAndReported() {
+        UUID liked = newPost();
+        service.likePost(liked, new LikeRequest("alice"));
+        service.likePost(liked, new LikeRequest("bob"));
+        service.createComment(liked, new CommentCreateRequest("carol", "Nice"));
+        UUID commented = newPost();
+        service.createComment(commented, new CommentCreateRequest("alice", "First"));
+        UUID untouched = newPost();
+        // Reads go through the cache, so it has to hold the wrong values as well.
+        service.getPost(liked);
+        service.getPost(commented);
+
+        jdbc.update("UPDATE posts SET likeCount = 7, commentCount = 3 WHERE id = ?", bytes(liked));
+        jdbc.update("UPDATE posts SET commentCount = 0 WHERE id = ?", bytes(commented));
+
+        assertThat(reconciler.reconcile()).isEqualTo(2);
+
+        assertThat(service.getPost(liked)).extracting(Post::likeCount, Post::commentCount).containsExactly(2, 1);
+        assertThat(service.getPost(commented)).extracting(Post::likeCount, Post::commentCount).containsExactly(0, 1);
+        assertThat(service.getPost(untouched)).extracting(Post::likeCount, Post::commentCount).containsExactly(0, 0);
+        assertThat(reconciler.reconcile()).isZero();
+    }
+
+    private UUID newPost() {
+        return service.createPost(new PostCreateRequest("author", "Counted")).id();
+    }
+
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+}
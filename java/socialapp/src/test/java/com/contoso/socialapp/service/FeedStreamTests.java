@@ -0,0 +1,83 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.PostCreateRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Streams the feed the way the NDJSON and {@code stream=true} responses do, with consumers as
+ * slow as any client can be.
+ */
+@SpringBootTest(properties = "socialapp.datasource.acquire-timeout=PT1S")
+class FeedStreamTests extends SqliteTestDatabase {
+    @Autowired
+    SocialAppService service;
+
+    @Value("${socialapp.datasource.read-pool-size}")
+    int readPoolSize;
+
+    @Test
+    void streamsEveryPostNewestFirstAcrossPages() {
+        List<UUID> created = new ArrayList<>();
+        for (int batch = 0; batch < 6; batch++) {
+            List<PostCreateRequest> requests = IntStream.range(0, 100)
+                    .mapToObj(i -> new PostCreateRequest("author", "Streamed post " + i))
+                    .toList();
+            // Every post in a batch shares a timestamp, so page boundaries fall between equal ones.
+            service.createPosts(requests).forEach(result -> created.add(result.item().id()));
+        }
+
+        List<Post> streamed = new ArrayList<>();
+        service.streamPosts(streamed::add);
+
+        assertThat(streamed).extracting(Post::id).doesNotHaveDuplicates().containsAll(created);
+        assertThat(streamed).isSortedAccordingTo(
+                Comparator.comparing(Post::createdAt).thenComparing(Post::id).reversed()
+        );
+    }
+
+    @Test
+    void stalledConsumersDoNotHoldReadConnections() throws InterruptedException {
+        UUID postId = service.createPost(new PostCreateRequest("author", "Read while streams stall")).id();
+        CountDownLatch stalled = new CountDownLatch(readPoolSize * 2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> streams = IntStream.range(0, readPoolSize * 2)
+                .mapToObj(i -> Thread.ofVirtual().start(() -> service.streamPosts(post -> {
+                    stalled.countDown();
+                    await(release);
+                })))
+                .toList();
+        try {
+            assertThat(stalled.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(service.getPost(postId).id()).isEqualTo(postId);
+        } finally {
+            release.countDown();
+            for (Thread stream : streams) {
+                stream.join();
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
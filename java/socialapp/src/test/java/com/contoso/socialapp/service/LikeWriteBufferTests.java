@@ -0,0 +1,297 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.exception.BadRequestException;
+import com.contoso.socialapp.model.LikeEvent;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeChange;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeData;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeOutcome;
+import com.contoso.socialapp.repository.SocialAppRepository.LikeState;
+import com.contoso.socialapp.repository.SocialAppRepository.NewLike;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Exercises the write-behind buffer against a stand-in repository, so each test decides what the
+ * database holds and when a flush commits.
+ */
+class LikeWriteBufferTests {
+    private static final UUID POST_ID = UuidV7.generate();
+    private static final Instant LIKED_AT = Instant.parse("2025-01-02T00:00:00Z");
+
+    private SocialAppRepository repository;
+    private PostCache cache;
+    private TrendingIndex trending;
+    private ActivityEvents events;
+    private LikeWriteBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SocialAppRepository.class);
+        cache = mock(PostCache.class);
+        trending = mock(TrendingIndex.class);
+        events = mock(ActivityEvents.class);
+        // Unless a test says otherwise, every like a flush writes is inserted.
+        when(repository.applyLikeChanges(anyList(), anyList()))
+                .thenAnswer(invocation -> inserted(invocation.<List<?>>getArgument(0).size()));
+        // A flush interval and lag this long leave every flush to the test.
+        buffer = new LikeWriteBuffer(
+                repository, cache, trending, events, true, Duration.ofHours(1), Duration.ofHours(1), 4
+        );
+    }
+
+    @Test
+    void togglesOfTheSamePairCollapseBeforeTheyAreWritten() {
+        buffer.like(POST_ID, "alice", LIKED_AT);
+        buffer.unlike(POST_ID, "alice");
+        buffer.like(POST_ID, "bob", LIKED_AT);
+        buffer.unlike(POST_ID, "bob");
+        buffer.like(POST_ID, "bob", LIKED_AT);
+
+        assertThat(countOf(0)).isEqualTo(1);
+        assertThatThrownBy(() -> buffer.like(POST_ID, "bob", LIKED_AT)).isInstanceOf(BadRequestException.class);
+
+        buffer.flush();
+
+        verify(repository).applyLikeChanges(eq(List.of(new NewLike(POST_ID, "bob", LIKED_AT))), eq(List.of()));
+    }
+
+    @Test
+    void aFlushWritesOneBatchAndHandsTheCountBackToTheDatabase() {
+        buffer.like(POST_ID, "alice", LIKED_AT);
+        buffer.like(POST_ID, "bob", LIKED_AT);
+        when(repository.likeExists(POST_ID, "carol")).thenReturn(true);
+        buffer.unlike(POST_ID, "carol");
+        assertThat(countOf(5)).isEqualTo(6);
+
+        buffer.flush();
+
+        ArgumentCaptor<List<NewLike>> added = ArgumentCaptor.captor();
+        verify(repository).applyLikeChanges(added.capture(), eq(List.of(new LikeData(POST_ID, "carol"))));
+        assertThat(added.getValue())
+                .containsExactlyInAnyOrder(new NewLike(POST_ID, "alice", LIKED_AT), new NewLike(POST_ID, "bob", LIKED_AT));
+        verify(cache).invalidatePost(POST_ID);
+        assertThat(countOf(6)).isEqualTo(6);
+        assertThat(buffer.pendingLike(POST_ID, "alice")).isNull();
+    }
+
+    @Test
+    void aFailedFlushPutsItsBatchBackForTheNextOne() {
+        doThrow(new TransientDataAccessResourceException("busy"))
+                .doReturn(inserted(1))
+                .when(repository).applyLikeChanges(anyList(), anyList());
+        buffer.like(POST_ID, "alice", LIKED_AT);
+
+        assertThatThrownBy(buffer::flush).isInstanceOf(TransientDataAccessResourceException.class);
+
+        assertThat(countOf(0)).isEqualTo(1);
+        assertThat(buffer.pendingLike(POST_ID, "alice")).isTrue();
+        buffer.flush();
+        verify(repository, times(2))
+                .applyLikeChanges(eq(List.of(new NewLike(POST_ID, "alice", LIKED_AT))), eq(List.of()));
+        assertThat(countOf(1)).isEqualTo(1);
+    }
+
+    @Test
+    void likesAreScoredAndAnnouncedOnceTheFlushHasStoredThem() {
+        UUID deleted = UuidV7.generate();
+        buffer.like(POST_ID, "alice", LIKED_AT);
+        buffer.like(deleted, "alice", LIKED_AT);
+        verify(events, never()).publish(any(), any());
+        verify(trending, never()).liked(any(), any());
+        when(repository.applyLikeChanges(anyList(), anyList())).thenAnswer(invocation -> {
+            List<NewLike> added = invocation.getArgument(0);
+            return added.stream().mapToInt(like -> like.postId().equals(deleted) ? 0 : 1).toArray();
+        });
+
+        buffer.flush();
+
+        ArgumentCaptor<LikeEvent> announced = ArgumentCaptor.captor();
+        verify(events).publish(eq(ActivityEvents.LIKE), announced.capture());
+        assertThat(announced.getValue().postId()).isEqualTo(POST_ID);
+        assertThat(announced.getValue().username()).isEqualTo("alice");
+        verify(trending).liked(POST_ID, LIKED_AT);
+        verify(trending, never()).liked(eq(deleted), any());
+    }
+
+    @Test
+    void eachLikeIsStoredAndAnnouncedWithTheTimeItWasMade() {
+        Instant later = LIKED_AT.plusSeconds(30);
+        buffer.like(POST_ID, "alice", LIKED_AT);
+        buffer.like(POST_ID, "bob", later);
+
+        buffer.flush();
+
+        ArgumentCaptor<List<NewLike>> added = ArgumentCaptor.captor();
+        verify(repository).applyLikeChanges(added.capture(), eq(List.of()));
+        assertThat(added.getValue())
+                .containsExactlyInAnyOrder(new NewLike(POST_ID, "alice", LIKED_AT), new NewLike(POST_ID, "bob", later));
+        ArgumentCaptor<LikeEvent> announced = ArgumentCaptor.captor();
+        verify(events, times(2)).publish(eq(ActivityEvents.LIKE), announced.capture());
+        assertThat(announced.getAllValues())
+                .extracting(LikeEvent::username, LikeEvent::likedAt)
+                .containsExactlyInAnyOrder(tuple("alice", LIKED_AT), tuple("bob", later));
+    }
+
+    @Test
+    void aFailedFlushAnnouncesNothing() {
+        doThrow(new TransientDataAccessResourceException("busy"))
+                .when(repository).applyLikeChanges(anyList(), anyList());
+        buffer.like(POST_ID, "alice", LIKED_AT);
+
+        assertThatThrownBy(buffer::flush).isInstanceOf(TransientDataAccessResourceException.class);
+
+        verify(events, never()).publish(any(), any());
+    }
+
+    @Test
+    void shutdownDrainsWhatIsStillBuffered() {
+        buffer.start();
+        buffer.like(POST_ID, "alice", LIKED_AT);
+
+        buffer.drain();
+
+        verify(repository).applyLikeChanges(eq(List.of(new NewLike(POST_ID, "alice", LIKED_AT))), eq(List.of()));
+    }
+
+    @Test
+    void aBatchLooksUpEveryItemInOneQuery() {
+        UUID missing = UuidV7.generate();
+        when(repository.findLikeStates(anyList())).thenReturn(List.of(
+                new LikeState(true, false),
+                new LikeState(true, true),
+                new LikeState(true, false),
+                new LikeState(false, false)
+        ));
+
+        List<LikeOutcome> outcomes = buffer.apply(List.of(
+                new LikeChange(POST_ID, "alice", true),
+                new LikeChange(POST_ID, "bob", true),
+                new LikeChange(POST_ID, "alice", true),
+                new LikeChange(missing, "alice", true)
+        ), LIKED_AT);
+
+        assertThat(outcomes).containsExactly(
+                LikeOutcome.CHANGED, LikeOutcome.UNCHANGED, LikeOutcome.UNCHANGED, LikeOutcome.POST_NOT_FOUND
+        );
+        verify(repository, never()).likeExists(any(), any());
+        assertThat(countOf(1)).isEqualTo(2);
+    }
+
+    @Test
+    void anEmptyBufferWritesNothing() {
+        buffer.flush();
+
+        verify(repository, never()).applyLikeChanges(anyList(), anyList());
+    }
+
+    /**
+     * The database row and the buffered delta are read separately, so a read landing between the
+     * commit and the buffer's bookkeeping could count a like twice. It has to see it once.
+     */
+    @Test
+    void aReadDuringACommitCountsEachLikeOnce() throws Exception {
+        AtomicInteger storedCount = new AtomicInteger();
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            storedCount.incrementAndGet();
+            committed.countDown();
+            finish.await(5, TimeUnit.SECONDS);
+            return inserted(1);
+        }).when(repository).applyLikeChanges(anyList(), anyList());
+        buffer.like(POST_ID, "alice", LIKED_AT);
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(buffer::flush);
+        assertThat(committed.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Integer> read = CompletableFuture.supplyAsync(
+                () -> buffer.read(() -> buffer.withPendingLikes(post(storedCount.get()))).likeCount()
+        );
+        finish.countDown();
+
+        flush.get(5, TimeUnit.SECONDS);
+        assertThat(read.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    @Test
+    void aSlowLookupDoesNotHoldUpOtherLikesOnTheStripe() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(repository.likeExists(POST_ID, "slow")).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return false;
+        });
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> buffer.like(POST_ID, "slow", LIKED_AT));
+        try {
+            CompletableFuture.runAsync(() -> buffer.like(POST_ID, "fast", LIKED_AT)).get(1, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+        }
+        slow.get(5, TimeUnit.SECONDS);
+
+        assertThat(countOf(0)).isEqualTo(2);
+    }
+
+    @Test
+    void aLookupOverlappingAFlushIsRepeated() throws Exception {
+        CountDownLatch lookedUp = new CountDownLatch(1);
+        CountDownLatch flushed = new CountDownLatch(1);
+        // The first answer predates a flush that writes the like, so it must not be trusted.
+        when(repository.likeExists(POST_ID, "alice"))
+                .thenAnswer(invocation -> {
+                    lookedUp.countDown();
+                    flushed.await(5, TimeUnit.SECONDS);
+                    return false;
+                })
+                .thenReturn(true);
+        buffer.like(POST_ID, "bob", LIKED_AT);
+        CompletableFuture<Void> like = CompletableFuture.runAsync(() -> buffer.like(POST_ID, "alice", LIKED_AT));
+        assertThat(lookedUp.await(5, TimeUnit.SECONDS)).isTrue();
+
+        buffer.flush();
+        flushed.countDown();
+
+        assertThatThrownBy(() -> like.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(BadRequestException.class);
+    }
+
+    private int countOf(int stored) {
+        return buffer.read(() -> buffer.withPendingLikes(post(stored))).likeCount();
+    }
+
+    private static int[] inserted(int likes) {
+        int[] rows = new int[likes];
+        Arrays.fill(rows, 1);
+        return rows;
+    }
+
+    private static Post post(int likeCount) {
+        Instant createdAt = Instant.parse("2025-01-01T00:00:00Z");
+        return new Post(POST_ID, "author", "Post", createdAt, createdAt, likeCount, 0);
+    }
+}
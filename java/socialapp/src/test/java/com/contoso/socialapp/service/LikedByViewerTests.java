@@ -0,0 +1,60 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.SqliteTestDatabase;
+import com.contoso.socialapp.model.LikeRequest;
+import com.contoso.socialapp.model.Post;
+import com.contoso.socialapp.model.PostCreateRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Marks the posts a viewer has liked on a page where some are liked by them, some only by others
+ * and some by nobody, and counts the statements it takes.
+ */
+@SpringBootTest
+class LikedByViewerTests extends SqliteTestDatabase {
+    private static final int POSTS = 6;
+
+    @Autowired
+    SocialAppService service;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void aPageIsMarkedForTheViewerInOneQuery() {
+        List<UUID> postIds = new ArrayList<>();
+        for (int i = 0; i < POSTS; i++) {
+            postIds.add(service.createPost(new PostCreateRequest("author", "Post " + i)).id());
+        }
+        service.likePost(postIds.get(0), new LikeRequest("alice"));
+        service.likePost(postIds.get(2), new LikeRequest("alice"));
+        service.likePost(postIds.get(2), new LikeRequest("bob"));
+        service.likePost(postIds.get(3), new LikeRequest("bob"));
+        service.likePost(postIds.get(5), new LikeRequest("alice"));
+        double lookups = executions("FIND_LIKED_POST_IDS");
+        double singleLookups = executions("LIKE_EXISTS");
+
+        Map<UUID, Boolean> liked = service.listPosts(POSTS, null, "alice").items().stream()
+                .collect(Collectors.toMap(Post::id, Post::likedByViewer));
+
+        assertThat(liked).containsOnlyKeys(postIds);
+        assertThat(postIds).extracting(liked::get).containsExactly(true, false, true, false, false, true);
+        assertThat(executions("FIND_LIKED_POST_IDS")).isEqualTo(lookups + 1);
+        assertThat(executions("LIKE_EXISTS")).isEqualTo(singleLookups);
+    }
+
+    private double executions(String statement) {
+        return meterRegistry.get("socialapp.db.statement").tag("statement", statement).timer().count();
+    }
+}
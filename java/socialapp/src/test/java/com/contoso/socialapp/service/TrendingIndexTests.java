@@ -0,0 +1,116 @@
+package com.contoso.socialapp.service;
+
+import com.contoso.socialapp.repository.SocialAppRepository;
+import com.contoso.socialapp.repository.SocialAppRepository.Activity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The ranking behind /posts/trending, with the database's answer to a refresh decided by each test.
+ */
+class TrendingIndexTests {
+    private static final UUID POST_A = UuidV7.generate();
+    private static final UUID POST_B = UuidV7.generate();
+
+    private SocialAppRepository repository;
+    private ChangeVersions versions;
+    private TrendingIndex trending;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SocialAppRepository.class);
+        versions = new ChangeVersions(16);
+        trending = new TrendingIndex(repository, versions, Duration.ofHours(6), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void aLikeScoredDuringARefreshIsNeitherHeldUpNorLost() throws Exception {
+        Instant at = Instant.now();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // A like is stored before it is scored, so a read started after it finds it.
+        when(repository.findPostActivitySince(eq(POST_A), any()))
+                .thenAnswer(invocation -> {
+                    reading.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return List.of(new Activity(POST_A, at, false));
+                })
+                .thenReturn(List.of(new Activity(POST_A, at, false), new Activity(POST_A, at, false)));
+        // One like, a moment later than either of A's, so it outranks A unless A keeps both.
+        trending.liked(POST_B, at.plusMillis(1));
+
+        Thread refresh = Thread.ofPlatform().start(() -> trending.refresh(POST_A));
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture.runAsync(() -> trending.liked(POST_A, at)).get(1, TimeUnit.SECONDS);
+        release.countDown();
+        refresh.join();
+
+        assertThat(trending.top(2)).containsExactly(POST_A, POST_B);
+        verify(repository, times(2)).findPostActivitySince(eq(POST_A), any());
+    }
+
+    @Test
+    void aFailedRefreshLeavesTheScoreAsItWas() {
+        when(repository.findPostActivitySince(eq(POST_A), any())).thenThrow(new TransientDataAccessResourceException("busy"));
+        trending.liked(POST_A, Instant.now());
+
+        assertThatThrownBy(() -> trending.refresh(POST_A)).isInstanceOf(TransientDataAccessResourceException.class);
+
+        assertThat(trending.top(10)).containsExactly(POST_A);
+        trending.liked(POST_B, Instant.now().minus(Duration.ofHours(1)));
+        assertThat(trending.top(10)).containsExactly(POST_A, POST_B);
+    }
+
+    @Test
+    void pruningDropsDecayedPostsAndChangesTheFeedVersion() {
+        trending.liked(POST_A, Instant.now().minus(Duration.ofDays(10)));
+        trending.liked(POST_B, Instant.now());
+        long before = versions.feed().number();
+
+        assertThat(trending.prune()).isEqualTo(1);
+
+        assertThat(trending.top(10)).containsExactly(POST_B);
+        assertThat(versions.feed().number()).isGreaterThan(before);
+    }
+
+    @Test
+    void pruningNothingLeavesTheFeedVersionAlone() {
+        trending.liked(POST_B, Instant.now());
+        long before = versions.feed().number();
+
+        assertThat(trending.prune()).isZero();
+
+        assertThat(versions.feed().number()).isEqualTo(before);
+    }
+
+    @Test
+    void aRefreshChangesTheFeedVersion() {
+        when(repository.findPostActivitySince(eq(POST_A), any())).thenReturn(List.of());
+        trending.liked(POST_A, Instant.now());
+        long before = versions.feed().number();
+
+        trending.refresh(POST_A);
+
+        assertThat(trending.top(10)).isEmpty();
+        assertThat(versions.feed().number()).isGreaterThan(before);
+    }
+}